@@ -0,0 +1,17 @@
+@echo off
+rem JPL launcher.
+rem Starts from the AppCDS archive built by "mvn -Pappcds package" (target\jpl.jsa) when present.
+rem A missing or stale archive is ignored silently.
+rem Extra JVM options go in JPL_JAVA_OPTS, e.g. set "JPL_JAVA_OPTS=--add-modules jdk.incubator.vector"
+rem for the SIMD array natives.
+
+if "%JPL_HOME%"=="" set "JPL_HOME=%~dp0.."
+if "%JPL_JAR%"=="" set "JPL_JAR=%JPL_HOME%\target\JPL-1.0-SNAPSHOT.jar"
+if "%JPL_JSA%"=="" set "JPL_JSA=%JPL_HOME%\target\jpl.jsa"
+set "JAVA=java"
+if not "%JAVA_HOME%"=="" set "JAVA=%JAVA_HOME%\bin\java"
+
+set "CDS_OPTS=-Xshare:auto -Xlog:cds=off -Xlog:cds+dynamic=off"
+if exist "%JPL_JSA%" set "CDS_OPTS=%CDS_OPTS% -XX:SharedArchiveFile=%JPL_JSA%"
+
+"%JAVA%" %CDS_OPTS% %JPL_JAVA_OPTS% -jar "%JPL_JAR%" %*
@@ -3,12 +3,21 @@ package com.kapil.jpl.cli;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapil.jpl.core.ExecutionTracer;
 import com.kapil.jpl.core.JPLInterpreter;
+import com.kapil.jpl.core.JPLLoader;
+import com.kapil.jpl.core.JPLValidator;
+import com.kapil.jpl.exceptions.JPLLimitException;
+import com.kapil.jpl.utils.JsonUtils;
 import picocli.CommandLine;
 import picocli.CommandLine.*;
 
 import java.io.*;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 
 
@@ -28,8 +37,10 @@ import java.nio.file.Path;
                 JPLCLI.BuildCommand.class,
                 JPLCLI.CompileCommand.class,
                 JPLCLI.EvalCommand.class,
+                JPLCLI.PipeCommand.class,
                 JPLCLI.FormatCommand.class,
-                JPLCLI.ExplainCommand.class
+                JPLCLI.ExplainCommand.class,
+                JPLCLI.WarmupCommand.class
         }
 )
 public class JPLCLI implements Runnable {
@@ -63,11 +74,37 @@ public class JPLCLI implements Runnable {
      *
      *
      */
-    @Command(name = "run", description = "Run a .jpl program file")
+    @Command(name = "run", description = "Run a .jpl (or compiled .jplb) program file")
     static class RunCommand implements Runnable {
-        @Parameters(index = "0", description = "Path to the .jpl program")
+        @Parameters(index = "0", description = "Path to the .jpl or .jplb program")
         private File file;
 
+        @Option(names = "--max-instructions", description = "Abort the run after this many instructions")
+        private long maxInstructions;
+
+        @Option(names = "--timeout-ms", description = "Abort the run after this many milliseconds")
+        private long timeoutMillis;
+
+        @Option(names = "--max-depth", description = "Maximum depth of nested function calls")
+        private int maxCallDepth;
+
+        @Option(names = "--max-alloc-mb", description = "Abort the run after it has allocated this many megabytes")
+        private long maxAllocatedMegabytes;
+
+        @Option(names = "--trace", paramLabel = "N", description = "Keep the last N executed instructions and print them if the run fails")
+        private int traceSize;
+
+        @Option(names = {"-w", "--watch"}, description = "Re-run the program whenever it or one of its imports changes")
+        private boolean watch;
+
+        @Option(names = "--compile-threshold", paramLabel = "N",
+                description = "Compile a function to bytecode after N calls and loop iterations; 0 disables (default: ${DEFAULT-VALUE})")
+        private int compileThreshold = JPLInterpreter.DEFAULT_COMPILE_THRESHOLD;
+
+        @Option(names = "--explicit-stack",
+                description = "Run calls on a heap-allocated stack, so deep recursion is limited by memory rather than the thread stack")
+        private boolean explicitStack;
+
         /**
          * Executes the run command, validating and running the specified .jpl file.
          */
@@ -77,7 +114,7 @@ public class JPLCLI implements Runnable {
             if (file == null) {
                 file = new File(DEFAULT_FILE);
             }
-            if (!file.isFile() || !file.getName().endsWith(".jpl")) {
+            if (!file.isFile() || !(file.getName().endsWith(JPLLoader.SOURCE_EXTENSION) || JPLLoader.isBinary(file))) {
                 System.err.println("Invalid or missing JPL program: " + file.getAbsolutePath());
                 return;
             }
@@ -91,7 +128,23 @@ public class JPLCLI implements Runnable {
             }
             try {
                 JPLInterpreter interpreter = new JPLInterpreter();
-                interpreter.execute(file);
+                interpreter.getContext().getBudget()
+                        .maxInstructions(maxInstructions)
+                        .timeout(Duration.ofMillis(timeoutMillis))
+                        .maxCallDepth(maxCallDepth)
+                        .maxAllocatedBytes(maxAllocatedMegabytes * 1024 * 1024);
+                interpreter.setCompileThreshold(compileThreshold);
+                interpreter.setExplicitStack(explicitStack);
+                if (traceSize > 0) {
+                    interpreter.setTracer(new ExecutionTracer(traceSize));
+                }
+                if (watch) {
+                    new ProgramWatcher(file, interpreter).watch();
+                } else {
+                    interpreter.execute(file);
+                }
+            } catch (JPLLimitException e) {
+                System.err.println("Run aborted: " + e.getMessage());
             } catch (Exception e) {
                 System.err.println("Error running file: " + e.getMessage());
             }
@@ -259,13 +312,23 @@ public class JPLCLI implements Runnable {
         private File file;
 
         /**
-         * Validates the syntax of the specified .jpl file using Jackson's ObjectMapper.
+         * Validates the syntax and structure of the specified .jpl file in one streaming pass.
          */
         @Override
         public void run() {
+            if (!file.isFile()) {
+                System.err.println("Invalid or missing JPL program: " + file.getAbsolutePath());
+                return;
+            }
             try {
-                new com.fasterxml.jackson.databind.ObjectMapper().readTree(file);
-                System.out.println("File is valid JPL Program.");
+                JPLValidator validator = new JPLValidator(new JPLInterpreter().getContext().getResolver());
+                List<String> problems = validator.validate(file);
+                if (problems.isEmpty()) {
+                    System.out.println("File is valid JPL Program.");
+                } else {
+                    System.err.println("Invalid JPL Program:");
+                    problems.forEach(problem -> System.err.println("  " + problem));
+                }
             } catch (Exception e) {
                 System.err.println("Invalid JPL Program: " + e.getMessage());
             }
@@ -287,18 +350,31 @@ public class JPLCLI implements Runnable {
     }
 
     /**
-     * Command to compile and save output to a file (feature not yet implemented).
+     * Command to compile a .jpl program to a binary .jplb program.
      */
-    @Command(name = "compile", description = "Compile and save output to file (not yet implemented)")
+    @Command(name = "compile", description = "Compile a .jpl program to a binary .jplb file that loads without re-parsing")
     static class CompileCommand implements Runnable {
-        @Parameters(index = "0", description = "Command to compile JPL program", arity = "1")
-        private String file;
+        @Parameters(index = "0", description = "Path to the .jpl program", arity = "1")
+        private File file;
+
+        @Option(names = {"-o", "--output"}, description = "Output .jplb file (default: next to the source)")
+        private File output;
+
         /**
-         * Placeholder for compile functionality. Prints a coming soon message.
+         * Parses the source once and writes its compiled form.
          */
         @Override
         public void run() {
-            System.out.println("Compile feature coming soon...,We need your help to implement this feature!");
+            if (!file.isFile()) {
+                System.err.println("Invalid or missing JPL program: " + file.getAbsolutePath());
+                return;
+            }
+            try {
+                File written = JPLLoader.compile(file, output);
+                System.out.println("Compiled " + file.getPath() + " → " + written.getPath());
+            } catch (Exception e) {
+                System.err.println("Compile error: " + e.getMessage());
+            }
         }
     }
 
@@ -345,6 +421,59 @@ public class JPLCLI implements Runnable {
         }
     }
 
+    /**
+     * Command to transform newline-delimited JSON records from stdin with a JPL program.
+     * Stdout carries only the results; what the program prints goes to stderr.
+     */
+    @Command(name = "pipe", description = "Transform newline-delimited JSON records from stdin, writing one result per line")
+    static class PipeCommand implements Callable<Integer> {
+        @Parameters(index = "0", description = "Path to the .jpl or .jplb transform program")
+        private File file;
+
+        @Option(names = "--var", defaultValue = "input", description = "Variable each record is bound to (default: ${DEFAULT-VALUE})")
+        private String variable;
+
+        @Option(names = {"-j", "--jobs"}, paramLabel = "N", defaultValue = "1",
+                description = "Transform records on N threads; output keeps the input order (default: ${DEFAULT-VALUE})")
+        private int jobs;
+
+        @Option(names = "--skip-errors", description = "Report failing records on stderr and carry on instead of stopping")
+        private boolean skipErrors;
+
+        @Option(names = "--max-instructions", description = "Abort a record after this many instructions")
+        private long maxInstructions;
+
+        @Option(names = "--timeout-ms", description = "Abort a record after this many milliseconds")
+        private long timeoutMillis;
+
+        /**
+         * Loads the program once and streams stdin through it.
+         *
+         * @return 0 if every record was transformed (or skipped with --skip-errors), 1 if the pipe stopped on an error.
+         */
+        @Override
+        public Integer call() {
+            if (!file.isFile()) {
+                System.err.println("Invalid or missing JPL program: " + file.getAbsolutePath());
+                return 1;
+            }
+            // Results are buffered straight to the stdout descriptor, so 'print' cannot interleave with them
+            PrintStream stdout = System.out;
+            System.setOut(System.err);
+            try {
+                JPLLoader.Program program = JPLLoader.loadProgram(file);
+                new RecordPipe(program, variable, jobs, skipErrors, maxInstructions, timeoutMillis)
+                        .run(System.in, new FileOutputStream(FileDescriptor.out));
+                return 0;
+            } catch (Exception e) {
+                System.err.println("Pipe error: " + e.getMessage());
+                return 1;
+            } finally {
+                System.setOut(stdout);
+            }
+        }
+    }
+
     /**
      * Command to format a .jpl file (pretty print JSON).
      *
@@ -355,14 +484,12 @@ public class JPLCLI implements Runnable {
         private File file;
 
         /**
-         * Formats the specified .jpl file using Jackson's pretty printer.
+         * Formats the specified .jpl file with Jackson's pretty printer, streaming token by token.
          */
         @Override
         public void run() {
             try {
-                var mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                var tree = mapper.readTree(file);
-                mapper.writerWithDefaultPrettyPrinter().writeValue(file, tree);
+                JsonUtils.format(file.toPath());
                 System.out.println("File formatted successfully.");
             } catch (Exception e) {
                 System.err.println("Format error: " + e.getMessage());
@@ -388,5 +515,49 @@ public class JPLCLI implements Runnable {
         }
     }
 
+    /**
+     * Command that runs a training workload over a directory of .jpl programs.
+     * Used by the appcds build profile to record which classes a typical run loads.
+     */
+    @Command(name = "warmup", description = "Run a training workload over .jpl programs (used to build the AppCDS archive)")
+    static class WarmupCommand implements Runnable {
+        @Parameters(index = "0", arity = "0..1", defaultValue = "examples", description = "Directory of .jpl programs to run")
+        private File dir;
 
-}
\ No newline at end of file
+        /**
+         * Runs every .jpl file in the directory with its output discarded, then exercises the
+         * other CLI entry points (usage help, REPL setup) so their classes are loaded as well.
+         */
+        @Override
+        public void run() {
+            File[] programs = dir.listFiles((d, name) -> name.endsWith(".jpl"));
+            if (programs == null) {
+                System.err.println("Not a directory: " + dir.getAbsolutePath());
+                return;
+            }
+            Arrays.sort(programs);
+
+            PrintStream out = System.out;
+            PrintStream err = System.err;
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            int failed = 0;
+            try {
+                System.setOut(discard);
+                System.setErr(discard);
+                for (File program : programs) {
+                    try {
+                        new JPLInterpreter().execute(program);
+                    } catch (Exception | StackOverflowError e) {
+                        failed++;
+                    }
+                }
+                new CommandLine(new JPLCLI()).usage(discard);
+                new REPL(new JPLInterpreter());
+            } finally {
+                System.setOut(out);
+                System.setErr(err);
+            }
+            System.out.println("Warmed up with " + programs.length + " programs (" + failed + " failed).");
+        }
+    }
+}
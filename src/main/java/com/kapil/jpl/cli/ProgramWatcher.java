@@ -0,0 +1,101 @@
+package com.kapil.jpl.cli;
+
+import com.kapil.jpl.core.JPLInterpreter;
+import com.kapil.jpl.core.ModuleCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a program, then re-runs it every time the program or one of its imports changes.
+ * <p>
+ * The JVM and the interpreter stay warm between runs, and parsed modules are kept in a
+ * {@link ModuleCache}, so a re-run only re-parses the files that were edited.
+ * The directories of every loaded file are watched with a {@link WatchService}.
+ */
+final class ProgramWatcher {
+    /** Editors often write a file in several steps; wait this long for events to settle. */
+    private static final long DEBOUNCE_MS = 50;
+
+    private final File program;
+    private final JPLInterpreter interpreter;
+    private final ModuleCache modules = new ModuleCache();
+    private final Set<Path> watchedDirs = new HashSet<>();
+
+    ProgramWatcher(File program, JPLInterpreter interpreter) {
+        this.program = program;
+        this.interpreter = interpreter;
+        interpreter.setModuleCache(modules);
+    }
+
+    /**
+     * Runs the program and keeps watching until the thread is interrupted.
+     *
+     * @throws IOException If the file system cannot be watched.
+     */
+    void watch() throws IOException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            runOnce();
+            register(watcher);
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= isRelevant((Path) key.watchable(), event);
+                    }
+                    key.reset();
+                    key = watcher.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                }
+                if (changed) {
+                    runOnce();
+                    register(watcher);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runOnce() {
+        int parsedBefore = modules.getParseCount();
+        long start = System.nanoTime();
+        interpreter.getContext().clear();
+        try {
+            interpreter.execute(program);
+        } catch (Exception e) {
+            System.err.println("Error running file: " + e.getMessage());
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.err.println("[watch] ran in " + millis + " ms, re-parsed " + (modules.getParseCount() - parsedBefore)
+                + " of " + modules.files().size() + " files. Waiting for changes...");
+    }
+
+    private boolean isRelevant(Path dir, WatchEvent<?> event) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) return true;
+        Path file = dir.resolve((Path) event.context()).toAbsolutePath().normalize();
+        // A compiled .jplb next to a source also changes what gets loaded
+        String name = file.getFileName().toString();
+        if (name.endsWith(".jplb")) {
+            file = file.resolveSibling(name.substring(0, name.length() - 1));
+        }
+        return modules.files().contains(file) || file.equals(program.toPath().toAbsolutePath().normalize());
+    }
+
+    private void register(WatchService watcher) throws IOException {
+        Set<Path> dirs = new HashSet<>();
+        dirs.add(program.toPath().toAbsolutePath().normalize().getParent());
+        for (Path file : modules.files()) {
+            dirs.add(file.getParent());
+        }
+        for (Path dir : dirs) {
+            if (watchedDirs.add(dir)) {
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+        }
+    }
+}
@@ -1,23 +1,41 @@
 package com.kapil.jpl.cli;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.kapil.jpl.core.JPLContext;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.kapil.jpl.core.JPLInterpreter;
+import com.kapil.jpl.utils.JsonUtils;
 
 import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
+/**
+ * Interactive JPL shell.
+ * <p>
+ * Input is fed line by line into Jackson's non-blocking parser, so each line is only scanned once
+ * no matter how large the value being typed or pasted is. Completed values are evaluated by the
+ * REPL's interpreter, so variables and functions persist between inputs.
+ */
 public class REPL {
     private final JPLInterpreter interpreter;
     private final ObjectMapper mapper;
-    private final JPLContext context;
+    private final JsonFactory factory;
+
+    private JsonParser parser;
+    private TokenBuffer pending;
+    private int depth;
 
     public REPL(JPLInterpreter interpreter) {
         this.interpreter = interpreter;
-        this.context = new JPLContext();
-        this.mapper = new ObjectMapper();
+        this.factory = JsonUtils.FACTORY;
+        this.mapper = JsonUtils.MAPPER;
     }
 
     public void start() {
@@ -25,69 +43,121 @@ public class REPL {
         System.out.println("Type JPL JSON code or type `exit` to quit.");
 
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-        StringBuilder buffer = new StringBuilder();
+        resetParser();
 
         while (true) {
             try {
-                System.out.print("jpl> ");
+                System.out.print(pending == null ? "jpl> " : "...> ");
                 String line = reader.readLine();
 
                 if (line == null || line.trim().equalsIgnoreCase("exit")) break;
                 if (line.trim().equalsIgnoreCase("clear")) {
-                    buffer.setLength(0);
+                    resetParser();
                     System.out.println("[ Cleared ]");
                     continue;
                 }
                 if (line.trim().equalsIgnoreCase("help")) {
                     System.out.println("💡 Write valid JPL JSON code and press Enter.");
-                    System.out.println("Commands: exit, clear, help");
+                    System.out.println("Commands: exit, clear, help, :save <file>, :load <file>");
                     continue;
                 }
-
-                buffer.append(line.trim());
-
-                // Try parsing JSON
-                try {
-                    JsonNode node = mapper.readTree(buffer.toString());
-                    if (node.isNull() || !node.isObject()) {
-                        System.err.println("❌ Invalid JPL JSON. Please enter a valid object.");
-                        buffer.setLength(0); // clear buffer on error
-                        continue;
-                    }
-                    // If valid JSON, evaluate it
-                    Object result = interpreter.eval(node);
-                    if (result==null){
-                        Object newresult = context.resolve(node);
-                        if (newresult != null) {
-                            result = newresult;
-                        } else {
-                            System.out.println("No result returned.");
-                        }
-
-                    }
-                    if (result != null) {
-                        System.out.println("=> " + result);
-                    }
-                    buffer.setLength(0); // clear for next input
-                } catch (com.fasterxml.jackson.core.JsonParseException ex) {
-                    // not yet complete JSON – keep reading
-                    buffer.append(" ");
-                    System.out.println(ex);
-                } catch (IOException e) {
-                    System.err.println("❌ Error parsing JSON: " + e.getMessage());
-                    buffer.setLength(0); // clear buffer on error
-                } catch (Exception e) {
-
-                    buffer.setLength(0); // clear buffer on error
-
+                if (pending == null && line.trim().startsWith(":")) {
+                    runCommand(line.trim());
+                    continue;
                 }
+
+                feed(line);
+            } catch (IOException e) {
+                System.err.println("❌ Error parsing JSON: " + e.getMessage());
+                resetParser();
             } catch (Exception e) {
                 System.err.println("❌ Error: " + e.getMessage());
-                buffer.setLength(0);
+                resetParser();
             }
         }
 
         System.out.println("👋 Exiting JPL REPL.");
     }
 
+    /**
+     * Feeds one line of input to the parser and evaluates every value it completes.
+     *
+     * @param line The line just read.
+     * @throws IOException If the input is not valid JSON.
+     */
+    private void feed(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, 0, bytes.length);
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (pending == null) {
+                pending = new TokenBuffer(parser);
+            }
+            pending.copyCurrentEvent(parser);
+
+            if (token.isStructStart()) depth++;
+            else if (token.isStructEnd()) depth--;
+
+            if (depth == 0) {
+                JsonNode node = mapper.readTree(pending.asParser());
+                pending = null;
+                evaluate(node);
+            }
+        }
+    }
+
+    /**
+     * Runs a session command: {@code :save <file>} or {@code :load <file>}.
+     *
+     * @param command The command line, starting with ':'.
+     * @throws IOException If the snapshot cannot be written or read.
+     */
+    private void runCommand(String command) throws IOException {
+        String[] parts = command.split("\\s+", 2);
+        if (parts.length < 2 || parts[1].isBlank()) {
+            System.err.println("❌ Usage: " + parts[0] + " <file>");
+            return;
+        }
+        Path file = Path.of(parts[1].trim());
+        switch (parts[0]) {
+            case ":save" -> {
+                interpreter.saveSession(file);
+                System.out.println("💾 Session saved to " + file);
+            }
+            case ":load" -> {
+                interpreter.loadSession(file);
+                System.out.println("📂 Session loaded from " + file);
+            }
+            default -> System.err.println("❌ Unknown command: " + parts[0]);
+        }
+    }
+
+    private void evaluate(JsonNode node) {
+        if (node == null || node.isNull()) {
+            System.err.println("❌ Invalid JPL JSON. Please enter a valid object.");
+            return;
+        }
+        try {
+            interpreter.getContext().getBudget().start();
+            Object result = interpreter.eval(node);
+            if (result != null) {
+                System.out.println("=> " + result);
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Error: " + e.getMessage());
+        }
+    }
+
+    private void resetParser() {
+        try {
+            if (parser != null) parser.close();
+            parser = factory.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create JSON parser", e);
+        }
+        pending = null;
+        depth = 0;
+    }
+
 }
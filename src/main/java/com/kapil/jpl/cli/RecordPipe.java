@@ -0,0 +1,253 @@
+package com.kapil.jpl.cli;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.kapil.jpl.core.ExecutionBudget;
+import com.kapil.jpl.core.JPLInterpreter;
+import com.kapil.jpl.core.JPLLoader;
+import com.kapil.jpl.core.JPLString;
+import com.kapil.jpl.exceptions.JPLException;
+import com.kapil.jpl.utils.JsonUtils;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Streams newline-delimited JSON records through a transform program.
+ * <p>
+ * The program is loaded once. Each interpreter runs its definitions, constants and imports once
+ * (see {@link JPLInterpreter#loadTransform}), then evaluates the remaining instructions for every
+ * record, with the record bound to a variable. The value of the last instruction is written out as
+ * one line of JSON; a null value drops the record. Functions stay defined between records, so hot
+ * ones get compiled like in a long-running program.
+ * <p>
+ * With several jobs, records are handed to worker threads in batches, each worker with its own
+ * interpreter, and batches are written back in input order.
+ */
+final class RecordPipe {
+    private static final int BATCH_SIZE = 256;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final ObjectReader RECORDS = JsonUtils.MAPPER.readerFor(Object.class);
+
+    private final JPLLoader.Program program;
+    private final String variable;
+    private final int jobs;
+    private final boolean skipErrors;
+    private final long maxInstructions;
+    private final long timeoutMillis;
+
+    RecordPipe(JPLLoader.Program program, String variable, int jobs, boolean skipErrors,
+               long maxInstructions, long timeoutMillis) {
+        this.program = program;
+        this.variable = variable;
+        this.jobs = Math.max(jobs, 1);
+        this.skipErrors = skipErrors;
+        this.maxInstructions = maxInstructions;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /** Lines read from the input, numbered from {@code firstLine}. Blank lines are kept so numbers stay right. */
+    private record Batch(long firstLine, List<String> lines) {
+    }
+
+    /** The output of a batch, up to the record that failed if one did. */
+    private record Output(byte[] bytes, JPLException failure) {
+    }
+
+    /**
+     * Transforms every record of the input.
+     *
+     * @return How many records were read.
+     * @throws IOException  If the input cannot be read or the output written.
+     * @throws JPLException If a record fails and errors are not skipped.
+     */
+    long run(InputStream input, OutputStream output) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), BUFFER_SIZE);
+        OutputStream out = new BufferedOutputStream(output, BUFFER_SIZE);
+        try {
+            return jobs == 1 ? runSequential(reader, out) : runParallel(reader, out);
+        } finally {
+            out.flush();
+        }
+    }
+
+    private long runSequential(BufferedReader reader, OutputStream out) throws IOException {
+        Worker worker = new Worker();
+        long line = 0;
+        Batch batch;
+        while ((batch = readBatch(reader, line)) != null) {
+            write(out, worker.process(batch));
+            line += batch.lines().size();
+        }
+        return line;
+    }
+
+    private long runParallel(BufferedReader reader, OutputStream out) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(jobs, task -> {
+            Thread thread = new Thread(task, "jpl-pipe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> {
+            try {
+                return new Worker();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        // Enough batches in flight to keep every worker busy, few enough to bound memory
+        int window = jobs * 4;
+        Deque<Future<Output>> pending = new ArrayDeque<>();
+        try {
+            long line = 0;
+            Batch batch;
+            while ((batch = readBatch(reader, line)) != null) {
+                Batch submitted = batch;
+                pending.add(pool.submit(() -> workers.get().process(submitted)));
+                line += batch.lines().size();
+                if (pending.size() >= window) {
+                    write(out, await(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(out, await(pending.poll()));
+            }
+            return line;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void write(OutputStream out, Output output) throws IOException {
+        out.write(output.bytes());
+        if (output.failure() != null) throw output.failure();
+    }
+
+    private static Output await(Future<Output> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a batch");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException unchecked) cause = unchecked.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            throw new JPLException(String.valueOf(cause));
+        }
+    }
+
+    private static Batch readBatch(BufferedReader reader, long firstLine) throws IOException {
+        List<String> lines = new ArrayList<>(BATCH_SIZE);
+        String line;
+        while (lines.size() < BATCH_SIZE && (line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines.isEmpty() ? null : new Batch(firstLine, lines);
+    }
+
+    /**
+     * An interpreter with the program loaded. Used by one thread at a time.
+     */
+    private final class Worker {
+        private final JPLInterpreter interpreter = new JPLInterpreter();
+        private final JsonNode transform;
+        private final Map<String, Object> baseline;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+
+        Worker() throws IOException {
+            interpreter.getContext().getBudget()
+                    .maxInstructions(maxInstructions)
+                    .timeout(Duration.ofMillis(timeoutMillis));
+            transform = interpreter.loadTransform(program);
+            baseline = new HashMap<>(interpreter.getContext().getVariables());
+        }
+
+        /**
+         * Transforms a batch of records.
+         *
+         * @return The output lines, up to the first failing record unless errors are skipped.
+         */
+        Output process(Batch batch) throws IOException {
+            buffer.reset();
+            Map<String, Object> variables = interpreter.getContext().getVariables();
+            ExecutionBudget budget = interpreter.getContext().getBudget();
+            JPLException failure = null;
+            try (JsonGenerator generator = JsonUtils.FACTORY.createGenerator(buffer)) {
+                generator.setRootValueSeparator(null);
+                for (int i = 0; i < batch.lines().size(); i++) {
+                    String line = batch.lines().get(i);
+                    if (line.isBlank()) continue;
+                    Object result;
+                    try {
+                        // Each record starts from the variables the program defined, not the previous record's
+                        variables.clear();
+                        variables.putAll(baseline);
+                        variables.put(variable, RECORDS.readValue(line));
+                        budget.start();
+                        result = interpreter.evalBlock(transform);
+                    } catch (IOException | RuntimeException e) {
+                        String reason = e instanceof JsonProcessingException json ? "invalid JSON: " + json.getOriginalMessage()
+                                : e instanceof JPLException jpl ? jpl.getReason() : e.getMessage();
+                        String message = "Record at line " + (batch.firstLine() + i + 1) + ": " + reason;
+                        if (skipErrors) {
+                            System.err.println(message);
+                            continue;
+                        }
+                        failure = new JPLException(message);
+                        break;
+                    }
+                    if (result != null) {
+                        write(generator, result);
+                        generator.writeRaw('\n');
+                    }
+                }
+            }
+            return new Output(buffer.toByteArray(), failure);
+        }
+    }
+
+    /**
+     * Writes a JPL value as JSON: maps as objects, lists and other iterables as arrays, and any
+     * value JSON has no type for as its text.
+     */
+    private static void write(JsonGenerator out, Object value) throws IOException {
+        value = JPLString.flatten(value);
+        if (value == null) {
+            out.writeNull();
+        } else if (value instanceof String s) {
+            out.writeString(s);
+        } else if (value instanceof Boolean b) {
+            out.writeBoolean(b);
+        } else if (value instanceof Number n) {
+            switch (n) {
+                case Integer v -> out.writeNumber(v);
+                case Long v -> out.writeNumber(v);
+                case BigInteger v -> out.writeNumber(v);
+                case BigDecimal v -> out.writeNumber(v);
+                default -> out.writeNumber(n.doubleValue());
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeStartObject();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                out.writeFieldName(String.valueOf(JPLString.flatten(entry.getKey())));
+                write(out, entry.getValue());
+            }
+            out.writeEndObject();
+        } else if (value instanceof Iterable<?> items) {
+            out.writeStartArray();
+            for (Object item : items) write(out, item);
+            out.writeEndArray();
+        } else {
+            out.writeString(value.toString());
+        }
+    }
+}
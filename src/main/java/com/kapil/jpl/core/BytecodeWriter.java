@@ -0,0 +1,389 @@
+package com.kapil.jpl.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal class file writer: a constant pool, methods with a Code attribute, and nothing else.
+ * <p>
+ * Classes are written as version 49 (Java 5), which the JVM verifies by type inference, so no
+ * stack map frames are needed. Branch offsets are 16 bits and local slots 8 bits; going past
+ * either throws an {@link IllegalStateException}. The maximum stack depth is tracked as
+ * instructions are added.
+ */
+final class BytecodeWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, ICONST_1 = 0x04, LCONST_0 = 0x09, LCONST_1 = 0x0a;
+    static final int BIPUSH = 0x10, SIPUSH = 0x11;
+    static final int ILOAD = 0x15, LLOAD = 0x16, DLOAD = 0x18, ALOAD = 0x19;
+    static final int ISTORE = 0x36, LSTORE = 0x37, DSTORE = 0x39, ASTORE = 0x3a;
+    static final int AALOAD = 0x32;
+    static final int POP = 0x57, POP2 = 0x58;
+    static final int LADD = 0x61, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DREM = 0x73, DNEG = 0x77;
+    static final int L2D = 0x8a, D2L = 0x8f;
+    static final int DCMPL = 0x97, DCMPG = 0x98;
+    static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac, ARETURN = 0xb0, RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2, GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+    static final int CHECKCAST = 0xc0, INSTANCEOF = 0xc1;
+
+    private static final int CONSTANT_UTF8 = 1, CONSTANT_INTEGER = 3, CONSTANT_LONG = 5, CONSTANT_DOUBLE = 6,
+            CONSTANT_CLASS = 7, CONSTANT_FIELDREF = 9, CONSTANT_METHODREF = 10,
+            CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    private final List<Code> methods = new ArrayList<>();
+
+    /**
+     * A jump target. Jumps to a label that is not bound yet are patched when it is.
+     */
+    static final class Label {
+        private int position = -1;
+        private int stack = -1;
+        private final List<int[]> fixups = new ArrayList<>();
+    }
+
+    /**
+     * The code of one method.
+     */
+    final class Code {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private int maxLocals;
+        private int stack;
+        private int maxStack;
+
+        private Code(int access, String name, String descriptor, int locals) {
+            this.access = access;
+            this.name = utf8(name);
+            this.descriptor = utf8(descriptor);
+            this.maxLocals = locals;
+        }
+
+        /**
+         * Adds an instruction without operands.
+         *
+         * @param opcode     The opcode.
+         * @param stackDelta How it changes the operand stack depth, in slots.
+         */
+        void op(int opcode, int stackDelta) {
+            bytes.write(opcode);
+            adjust(stackDelta);
+            if (opcode >= IRETURN && opcode <= RETURN) stack = -1;
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                bytes.write(BIPUSH);
+                bytes.write(value);
+                adjust(1);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                bytes.write(SIPUSH);
+                u2(value);
+                adjust(1);
+            } else {
+                ldc(constant(CONSTANT_INTEGER, value), 1);
+            }
+        }
+
+        void dconst(double value) {
+            bytes.write(0x14); // ldc2_w
+            u2(constant(CONSTANT_DOUBLE, Double.doubleToRawLongBits(value)));
+            adjust(2);
+        }
+
+        void lconst(long value) {
+            if (value == 0 || value == 1) {
+                op(LCONST_0 + (int) value, 2);
+                return;
+            }
+            bytes.write(0x14); // ldc2_w
+            u2(constant(CONSTANT_LONG, value));
+            adjust(2);
+        }
+
+        /**
+         * @return false right after a return or goto, until a label is bound.
+         */
+        boolean reachable() {
+            return stack >= 0;
+        }
+
+        private void ldc(int index, int slots) {
+            if (index < 256) {
+                bytes.write(0x12);
+                bytes.write(index);
+            } else {
+                bytes.write(0x13);
+                u2(index);
+            }
+            adjust(slots);
+        }
+
+        /**
+         * Adds a load or store of a local variable.
+         *
+         * @param opcode One of the xLOAD/xSTORE opcodes.
+         * @param slot   The local slot.
+         */
+        void local(int opcode, int slot) {
+            if (slot > 255) throw new IllegalStateException("Too many locals");
+            bytes.write(opcode);
+            bytes.write(slot);
+            boolean wide = opcode == LLOAD || opcode == DLOAD || opcode == LSTORE || opcode == DSTORE;
+            int slots = wide ? 2 : 1;
+            adjust(opcode < ISTORE ? slots : -slots);
+            maxLocals = Math.max(maxLocals, slot + slots);
+        }
+
+        void type(int opcode, String internalName) {
+            bytes.write(opcode);
+            u2(classRef(internalName));
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            bytes.write(opcode);
+            u2(ref(CONSTANT_FIELDREF, owner, name, descriptor));
+            int slots = slots(descriptor.charAt(0));
+            adjust(opcode == GETSTATIC ? slots : slots - 1);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            bytes.write(opcode);
+            u2(ref(CONSTANT_METHODREF, owner, name, descriptor));
+            int delta = opcode == INVOKESTATIC ? 0 : -1;
+            int i = 1;
+            while (descriptor.charAt(i) != ')') {
+                char c = descriptor.charAt(i);
+                delta -= slots(c);
+                while (c == '[') c = descriptor.charAt(++i);
+                i = c == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+            }
+            adjust(delta + slots(descriptor.charAt(i + 1)));
+        }
+
+        void jump(int opcode, Label target) {
+            if (opcode != GOTO) adjust(-1);
+            if (target.stack < 0) target.stack = stack;
+            int at = bytes.size();
+            bytes.write(opcode);
+            if (target.position >= 0) {
+                u2(offset(target.position - at));
+            } else {
+                target.fixups.add(new int[]{at, bytes.size()});
+                u2(0);
+            }
+            if (opcode == GOTO) stack = -1;
+        }
+
+        void bind(Label label) {
+            label.position = bytes.size();
+            if (stack < 0) stack = Math.max(label.stack, 0);
+            label.stack = stack;
+            if (label.fixups.isEmpty()) return;
+            byte[] code = bytes.toByteArray();
+            for (int[] fixup : label.fixups) {
+                int offset = offset(label.position - fixup[0]);
+                code[fixup[1]] = (byte) (offset >> 8);
+                code[fixup[1] + 1] = (byte) offset;
+            }
+            label.fixups.clear();
+            bytes.reset();
+            bytes.write(code, 0, code.length);
+        }
+
+        /**
+         * Sets the stack depth, for code that is only reached by jumps.
+         */
+        void stack(int depth) {
+            stack = depth;
+        }
+
+        int newLocal(int slots) {
+            int slot = maxLocals;
+            maxLocals += slots;
+            if (maxLocals > 255) throw new IllegalStateException("Too many locals");
+            return slot;
+        }
+
+        private void adjust(int delta) {
+            if (stack < 0) stack = 0;
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+
+        private int offset(int offset) {
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new IllegalStateException("Method too large");
+            }
+            return offset & 0xFFFF;
+        }
+    }
+
+    /**
+     * Starts a method.
+     *
+     * @param access     Access flags.
+     * @param name       The method name.
+     * @param descriptor The method descriptor.
+     * @param locals     Local slots used by {@code this} and the parameters.
+     * @return The method's code, to add instructions to.
+     */
+    Code method(int access, String name, String descriptor, int locals) {
+        Code code = new Code(access, name, descriptor, locals);
+        methods.add(code);
+        return code;
+    }
+
+    /**
+     * Writes the class file.
+     *
+     * @param access       Class access flags.
+     * @param internalName The class name, e.g. {@code com/example/Foo}.
+     * @param superName    The superclass name.
+     * @return The class file bytes.
+     */
+    byte[] toByteArray(int access, String internalName, String superName) {
+        int thisClass = classRef(internalName);
+        int superClass = classRef(superName);
+        int codeName = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                byte[] code = method.bytes.toByteArray();
+                if (code.length > 65535) throw new IllegalStateException("Method too large");
+                out.writeShort(method.access);
+                out.writeShort(method.name);
+                out.writeShort(method.descriptor);
+                out.writeShort(1);
+                out.writeShort(codeName);
+                out.writeInt(12 + code.length);
+                out.writeShort(method.maxStack);
+                out.writeShort(method.maxLocals);
+                out.writeInt(code.length);
+                out.write(code);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            }
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int utf8(String value) {
+        Integer index = poolIndex.get("U" + value);
+        if (index != null) return index;
+        try {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return register("U" + value, 1);
+    }
+
+    private int classRef(String internalName) {
+        Integer index = poolIndex.get("C" + internalName);
+        if (index != null) return index;
+        int name = utf8(internalName);
+        write(CONSTANT_CLASS, name);
+        return register("C" + internalName, 1);
+    }
+
+    private int ref(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + descriptor;
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        int ownerIndex = classRef(owner);
+        String natKey = "N" + name + descriptor;
+        Integer nat = poolIndex.get(natKey);
+        if (nat == null) {
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            write(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+            nat = register(natKey, 1);
+        }
+        write(tag, ownerIndex, nat);
+        return register(key, 1);
+    }
+
+    private int constant(int tag, long value) {
+        String key = tag + ":" + value;
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        try {
+            pool.writeByte(tag);
+            if (tag == CONSTANT_INTEGER) {
+                pool.writeInt((int) value);
+            } else {
+                pool.writeLong(value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return register(key, tag == CONSTANT_INTEGER ? 1 : 2);
+    }
+
+    private void write(int tag, int... indexes) {
+        try {
+            pool.writeByte(tag);
+            for (int index : indexes) pool.writeShort(index);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int register(String key, int slots) {
+        int index = poolCount;
+        poolCount += slots;
+        if (poolCount > 65535) throw new IllegalStateException("Constant pool too large");
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    private static int slots(char type) {
+        return switch (type) {
+            case 'V' -> 0;
+            case 'J', 'D' -> 2;
+            default -> 1;
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package com.kapil.jpl.core;
+
+import java.util.Objects;
+
+/**
+ * Base class of the hidden classes {@link FunctionCompiler} generates for hot JPL functions.
+ * <p>
+ * A compiled function is specialised for numeric arguments. {@link #invoke} checks that every
+ * argument is a {@link Number} before running any of the body; if one is not, it returns
+ * {@link #DEOPT} without side effects and the interpreter runs the call instead.
+ */
+abstract class CompiledFunction {
+    /** Returned by {@link #invoke} when the arguments do not match what the code was compiled for. */
+    static final Object DEOPT = new Object();
+
+    final Object[] constants;
+    final ExecutionBudget budget;
+    /** How many constants the context had when this was compiled; a new constant may forbid a 'let'. */
+    final int constantCount;
+
+    CompiledFunction(Object[] constants, ExecutionBudget budget, int constantCount) {
+        this.constants = constants;
+        this.budget = budget;
+        this.constantCount = constantCount;
+    }
+
+    /**
+     * Runs the function.
+     *
+     * @param args The evaluated arguments, one per parameter.
+     * @return The function's result, or {@link #DEOPT} if the arguments are not all numbers.
+     */
+    abstract Object invoke(Object[] args);
+
+    // Helpers called from generated code
+
+    static boolean equal(Object a, Object b) {
+        return Objects.equals(JPLString.flatten(a), JPLString.flatten(b));
+    }
+
+    static boolean equal(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+}
@@ -0,0 +1,257 @@
+package com.kapil.jpl.core;
+
+import com.kapil.jpl.exceptions.JPLLimitException;
+import com.kapil.jpl.exceptions.JPLLimitException.Limit;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-run limits on instructions executed, wall-clock time, call depth and allocated bytes.
+ * <p>
+ * The interpreter calls {@link #tick()} once per instruction and loop iteration. That is a
+ * single counter increment and compare; the deadline and the allocation counter are only read
+ * every {@value #CHECK_INTERVAL} ticks. When a limit is exceeded a {@link JPLLimitException}
+ * is thrown, which aborts the current run only.
+ * <p>
+ * All limits are off by default. A budget belongs to one {@link JPLContext} and is not thread-safe.
+ * Work split onto other threads counts against the same limits through {@link #fork() forked} budgets,
+ * which report what they used every {@value #CHECK_INTERVAL} ticks and in full at the {@link #join join}.
+ */
+public final class ExecutionBudget {
+    private static final int CHECK_INTERVAL = 1024;
+
+    private long maxInstructions = Long.MAX_VALUE;
+    private long timeoutNanos;
+    private int maxCallDepth = Integer.MAX_VALUE;
+    private long maxAllocatedBytes;
+
+    private long instructions;
+    private long deadline;
+    private int callDepth;
+    private long allocationStart;
+
+    /** The block this budget was forked for, or null. */
+    private Forks forkedFrom;
+    /** The block being forked from this budget, until it is joined. */
+    private Forks forking;
+    private long instructionsAtFork;
+    private long reportedInstructions;
+    private long reportedBytes;
+    private long allocatedBytes;
+
+    /**
+     * What the budgets forked for one parallel block have used so far, on top of the parent's usage
+     * when they were forked.
+     */
+    private static final class Forks {
+        final long instructions;
+        final long bytes;
+        final AtomicLong forkedInstructions = new AtomicLong();
+        final AtomicLong forkedBytes = new AtomicLong();
+
+        Forks(long instructions, long bytes) {
+            this.instructions = instructions;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * @param max Maximum number of instructions per run.
+     * @return this budget.
+     */
+    public ExecutionBudget maxInstructions(long max) {
+        this.maxInstructions = max > 0 ? max : Long.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * @param timeout Maximum wall-clock time per run, or null/zero for none.
+     * @return this budget.
+     */
+    public ExecutionBudget timeout(Duration timeout) {
+        this.timeoutNanos = timeout == null || timeout.isNegative() ? 0 : timeout.toNanos();
+        return this;
+    }
+
+    /**
+     * @param max Maximum depth of nested JPL function calls.
+     * @return this budget.
+     */
+    public ExecutionBudget maxCallDepth(int max) {
+        this.maxCallDepth = max > 0 ? max : Integer.MAX_VALUE;
+        return this;
+    }
+
+    /**
+     * Limits the bytes allocated by the running thread. This counts every allocation made during the run,
+     * including garbage that has since been collected, so it bounds allocation rate rather than live heap.
+     *
+     * @param max Maximum bytes allocated per run, or 0 for none.
+     * @return this budget.
+     * @throws UnsupportedOperationException If this JVM cannot measure per-thread allocation.
+     */
+    public ExecutionBudget maxAllocatedBytes(long max) {
+        if (max > 0 && !Allocation.SUPPORTED) {
+            throw new UnsupportedOperationException("This JVM cannot measure allocated bytes per thread");
+        }
+        this.maxAllocatedBytes = Math.max(max, 0);
+        return this;
+    }
+
+    /**
+     * Starts a new run: resets the counters and starts the clock.
+     */
+    public void start() {
+        instructions = 0;
+        callDepth = 0;
+        deadline = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+        allocationStart = maxAllocatedBytes > 0 ? Allocation.current() : 0;
+    }
+
+    /**
+     * Creates the budget for work split off the current run onto another thread: the same limits
+     * and deadline, counting on from this budget's instructions and call depth. The thread that
+     * uses it calls {@link #resumeOnThread()} first and {@link #leaveThread()} last, and this budget
+     * then {@link #join joins} it. While they run, forks from the same block check the sum of what
+     * they have used against the limits, so between them they cannot go far past one.
+     *
+     * @return A new budget; this one is unchanged.
+     */
+    ExecutionBudget fork() {
+        if (forking == null) forking = new Forks(instructions, allocated());
+        ExecutionBudget fork = new ExecutionBudget();
+        fork.maxInstructions = maxInstructions;
+        fork.timeoutNanos = timeoutNanos;
+        fork.maxCallDepth = maxCallDepth;
+        fork.maxAllocatedBytes = maxAllocatedBytes;
+        fork.instructions = instructions;
+        fork.instructionsAtFork = instructions;
+        fork.reportedInstructions = instructions;
+        fork.deadline = deadline;
+        fork.callDepth = callDepth;
+        fork.forkedFrom = forking;
+        return fork;
+    }
+
+    /**
+     * Starts counting allocated bytes on the calling thread, which is how a forked budget is taken over.
+     */
+    void resumeOnThread() {
+        allocationStart = maxAllocatedBytes > 0 ? Allocation.current() : 0;
+    }
+
+    /**
+     * Stops counting allocated bytes on the calling thread; called on the thread that resumed this budget.
+     */
+    void leaveThread() {
+        allocatedBytes = allocated();
+    }
+
+    /**
+     * Adds what the budgets forked since the last join used to this budget, as if their work had
+     * run here, and checks the limits. Called once every fork has finished.
+     *
+     * @param forks The forked budgets.
+     * @throws JPLLimitException If the combined usage exceeds a limit.
+     */
+    void join(List<ExecutionBudget> forks) {
+        forking = null;
+        for (ExecutionBudget fork : forks) {
+            instructions += fork.instructions - fork.instructionsAtFork;
+            allocationStart -= fork.allocatedBytes;
+        }
+        if (instructions > maxInstructions) {
+            throw new JPLLimitException(Limit.INSTRUCTIONS, "Instruction limit exceeded (" + maxInstructions + " instructions)");
+        }
+        checkClockAndMemory();
+    }
+
+    /**
+     * Counts one instruction.
+     *
+     * @throws JPLLimitException If a limit has been exceeded.
+     */
+    public void tick() {
+        if (++instructions > maxInstructions) {
+            throw new JPLLimitException(Limit.INSTRUCTIONS, "Instruction limit exceeded (" + maxInstructions + " instructions)");
+        }
+        if ((instructions & (CHECK_INTERVAL - 1)) == 0) {
+            checkClockAndMemory();
+        }
+    }
+
+    /**
+     * Records entry into a JPL function.
+     *
+     * @throws JPLLimitException If the call depth limit has been exceeded.
+     */
+    public void enterCall() {
+        if (callDepth >= maxCallDepth) {
+            throw new JPLLimitException(Limit.CALL_DEPTH, "Call depth limit exceeded (" + maxCallDepth + " nested calls)");
+        }
+        callDepth++;
+    }
+
+    /**
+     * Records return from a JPL function.
+     */
+    public void exitCall() {
+        callDepth--;
+    }
+
+    /**
+     * @return The number of instructions counted since the run started.
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    private void checkClockAndMemory() {
+        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+            throw new JPLLimitException(Limit.TIME, "Time limit exceeded (" + Duration.ofNanos(timeoutNanos).toMillis() + " ms)");
+        }
+        long bytes = allocated();
+        if (forkedFrom != null) {
+            // Report to the other forks of the block and check what all of them have used
+            long forkedInstructions = forkedFrom.forkedInstructions.addAndGet(instructions - reportedInstructions);
+            long forkedBytes = forkedFrom.forkedBytes.addAndGet(bytes - reportedBytes);
+            reportedInstructions = instructions;
+            reportedBytes = bytes;
+            if (forkedFrom.instructions + forkedInstructions > maxInstructions) {
+                throw new JPLLimitException(Limit.INSTRUCTIONS, "Instruction limit exceeded (" + maxInstructions + " instructions)");
+            }
+            bytes = forkedFrom.bytes + forkedBytes;
+        }
+        if (maxAllocatedBytes > 0 && bytes > maxAllocatedBytes) {
+            throw new JPLLimitException(Limit.MEMORY, "Memory limit exceeded (" + maxAllocatedBytes + " bytes allocated)");
+        }
+    }
+
+    private long allocated() {
+        return maxAllocatedBytes > 0 ? Allocation.current() - allocationStart : 0;
+    }
+
+    /**
+     * Reads the current thread's allocation counter; loaded only when a memory limit is used.
+     */
+    private static final class Allocation {
+        private static final com.sun.management.ThreadMXBean THREADS = threads();
+        static final boolean SUPPORTED = THREADS != null;
+
+        private static com.sun.management.ThreadMXBean threads() {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                    && threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+            return null;
+        }
+
+        static long current() {
+            return THREADS.getCurrentThreadAllocatedBytes();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the last N instructions an interpreter executed, for post-mortem debugging.
+ * <p>
+ * Entries go into preallocated arrays used as a ring buffer; a slot is claimed with a single
+ * atomic increment, so recording never locks or allocates. Each entry keeps the instruction node,
+ * the file it came from, a timestamp and, for {@code let}/{@code const}, the value written.
+ * To keep recording cheap the clock is only read every {@value #CLOCK_INTERVAL} entries,
+ * so timestamps are accurate to within that many instructions.
+ * Nothing is formatted until {@link #dump(PrintStream)} is called, which the interpreter does
+ * automatically when a run fails with a JPLException. The dump shows each instruction's line and
+ * column, looked up in the {@link SourceMap} of its file when the interpreter has registered one.
+ * <p>
+ * A dump taken while other threads are still recording may show a partially updated entry.
+ */
+public final class ExecutionTracer {
+    private static final int MAX_NODE_TEXT = 100;
+    private static final Object NOT_WRITTEN = new Object();
+    /** The clock is read once every this many entries; entries in between reuse the last reading. */
+    private static final int CLOCK_INTERVAL = 64;
+
+    private final int mask;
+    private final long[] sequences;
+    private final long[] times;
+    private final JsonNode[] nodes;
+    private final File[] files;
+    private final Object[] written;
+    private final Map<String, SourceMap> sources = new ConcurrentHashMap<>();
+    private final AtomicLong next = new AtomicLong();
+    private final long epochOffsetNanos = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+    private PrintStream output = System.err;
+    private long now = System.nanoTime();
+
+    /**
+     * @param capacity How many instructions to keep; rounded up to a power of two.
+     */
+    public ExecutionTracer(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Trace capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.mask = size - 1;
+        this.sequences = new long[size];
+        this.times = new long[size];
+        this.nodes = new JsonNode[size];
+        this.files = new File[size];
+        this.written = new Object[size];
+        Arrays.fill(sequences, -1);
+    }
+
+    /**
+     * Records an instruction about to be executed.
+     *
+     * @param file The file the instruction came from, or null.
+     * @param node The instruction.
+     * @return The entry's sequence number, for {@link #recordWrite}.
+     */
+    public long record(File file, JsonNode node) {
+        long seq = next.getAndIncrement();
+        int slot = (int) seq & mask;
+        if ((seq & (CLOCK_INTERVAL - 1)) == 0) {
+            now = System.nanoTime();
+        }
+        times[slot] = now;
+        nodes[slot] = node;
+        files[slot] = file;
+        written[slot] = NOT_WRITTEN;
+        sequences[slot] = seq;
+        return seq;
+    }
+
+    /**
+     * Attaches the value written by a {@code let} or {@code const} to its entry.
+     *
+     * @param seq   The sequence number returned by {@link #record}.
+     * @param value The value of the first variable written.
+     */
+    public void recordWrite(long seq, Object value) {
+        int slot = (int) seq & mask;
+        if (sequences[slot] == seq) {
+            written[slot] = value;
+        }
+    }
+
+    /**
+     * Makes dumps show line and column for instructions from a file.
+     *
+     * @param positions The positions of a loaded program's nodes.
+     */
+    public void addSource(SourceMap positions) {
+        sources.put(positions.getSource().getAbsolutePath(), positions);
+    }
+
+    /**
+     * @param output Where automatic dumps go; System.err by default.
+     */
+    public void setOutput(PrintStream output) {
+        this.output = output;
+    }
+
+    public PrintStream getOutput() {
+        return output;
+    }
+
+    /**
+     * @return The total number of instructions recorded.
+     */
+    public long getRecorded() {
+        return next.get();
+    }
+
+    /**
+     * Prints the recorded instructions, oldest first.
+     *
+     * @param out The stream to print to.
+     */
+    public void dump(PrintStream out) {
+        long end = next.get();
+        long start = Math.max(0, end - sequences.length);
+        out.println("--- last " + (end - start) + " of " + end + " instructions ---");
+        for (long seq = start; seq < end; seq++) {
+            int slot = (int) seq & mask;
+            if (sequences[slot] != seq) continue;
+            StringBuilder line = new StringBuilder();
+            line.append('#').append(seq).append(' ').append(formatTime(times[slot])).append(' ');
+            if (files[slot] != null) line.append(locate(files[slot], nodes[slot])).append(' ');
+            line.append(abbreviate(String.valueOf(nodes[slot])));
+            String write = describeWrite(nodes[slot], written[slot]);
+            if (write != null) line.append("  → ").append(write);
+            out.println(line);
+        }
+    }
+
+    private String locate(File file, JsonNode node) {
+        SourceMap positions = sources.get(file.getAbsolutePath());
+        String where = positions != null ? positions.locate(node) : null;
+        return where != null ? where : file.getName();
+    }
+
+    private String formatTime(long nanoTime) {
+        Instant instant = Instant.ofEpochSecond(0, nanoTime + epochOffsetNanos);
+        return LocalTime.ofInstant(instant, ZoneId.systemDefault()).toString();
+    }
+
+    private static String describeWrite(JsonNode node, Object value) {
+        if (value == NOT_WRITTEN || node == null) return null;
+        JsonNode target = node.has("let") ? node.get("let") : node.get("const");
+        if (target == null || !target.isObject() || target.isEmpty()) return null;
+        String summary = target.fieldNames().next() + " = " + abbreviate(String.valueOf(value));
+        return target.size() > 1 ? summary + " (+" + (target.size() - 1) + " more)" : summary;
+    }
+
+    private static String abbreviate(String text) {
+        return text.length() <= MAX_NODE_TEXT ? text : text.substring(0, MAX_NODE_TEXT) + "…";
+    }
+}
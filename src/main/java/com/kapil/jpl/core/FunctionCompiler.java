@@ -0,0 +1,760 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kapil.jpl.core.BytecodeWriter.Code;
+import com.kapil.jpl.core.BytecodeWriter.Label;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+import static com.kapil.jpl.core.BytecodeWriter.*;
+
+/**
+ * Compiles a JPL function to a hidden class, for functions the interpreter finds hot.
+ * <p>
+ * Only self-contained numeric code is compiled: the body may use its parameters and its own
+ * variables, number and boolean literals, the built-in arithmetic, comparison and logic operators,
+ * {@code let}, {@code if}, {@code while}/{@code do}, {@code for}, {@code break}, {@code continue},
+ * {@code return} and calls to the function itself. Anything else — strings, other functions,
+ * natives, {@code print}, imports, reading a variable the function did not assign — makes the
+ * function stay interpreted, because under dynamic scoping it could observe the caller's state.
+ * <p>
+ * Parameters are assumed to be numbers (the generated {@code invoke} checks this first) and each
+ * variable gets a single JVM type, inferred from what is assigned to it. Results of arithmetic are
+ * unboxed doubles, exactly as the interpreter computes them, and are only boxed when stored into
+ * a variable that also holds other numbers, passed to a call, or returned. The generated code
+ * ticks the context's {@link ExecutionBudget} once per statement and loop iteration and around
+ * every recursive call, so limits still apply.
+ */
+final class FunctionCompiler {
+    private static final String BASE = "com/kapil/jpl/core/CompiledFunction";
+    private static final String BUDGET = "com/kapil/jpl/core/ExecutionBudget";
+    private static final String INTERPRETER = "com/kapil/jpl/core/JPLInterpreter";
+    private static final String LOOP_BOUNDS = "com/kapil/jpl/utils/LoopBounds";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final Set<String> COMMENTS = Set.of("comment", "ignore", "skip", "noop", "cmt", "ig");
+
+    /** Operator keys, including aliases, mapped to the operation they stand for. */
+    private static final Map<String, String> OPERATORS = Map.ofEntries(
+            Map.entry("add", "add"), Map.entry("sub", "sub"), Map.entry("mul", "mul"),
+            Map.entry("div", "div"), Map.entry("mod", "mod"), Map.entry("pow", "pow"),
+            Map.entry("sqrt", "sqrt"), Map.entry("abs", "abs"), Map.entry("neg", "neg"),
+            Map.entry("sin", "sin"), Map.entry("cos", "cos"), Map.entry("tan", "tan"),
+            Map.entry("asin", "asin"), Map.entry("acos", "acos"), Map.entry("atan", "atan"),
+            Map.entry("sinh", "sinh"), Map.entry("cosh", "cosh"), Map.entry("tanh", "tanh"),
+            Map.entry("exp", "exp"), Map.entry("log", "log"), Map.entry("log10", "log10"), Map.entry("cbrt", "cbrt"),
+            Map.entry("hypot", "hypot"), Map.entry("atan2", "atan2"),
+            Map.entry("eq", "eq"), Map.entry("==", "eq"),
+            Map.entry("lt", "lt"), Map.entry("<", "lt"), Map.entry("lte", "lte"), Map.entry("<=", "lte"),
+            Map.entry("gt", "gt"), Map.entry(">", "gt"), Map.entry("gte", "gte"), Map.entry(">=", "gte"),
+            Map.entry("and", "and"), Map.entry("&&", "and"), Map.entry("or", "or"), Map.entry("||", "or"),
+            Map.entry("not", "not"), Map.entry("!", "not"));
+
+    /** Math operators that are a static double method of java.lang.Math of the same name. */
+    private static final Set<String> MATH_UNARY = Set.of("sqrt", "abs", "sin", "cos", "tan", "asin", "acos", "atan",
+            "sinh", "cosh", "tanh", "exp", "log", "log10", "cbrt");
+    private static final Set<String> MATH_BINARY = Set.of("pow", "hypot", "atan2");
+
+    /** JVM representation of a value. NUMBER and OBJECT are references; NUMBER is never null. */
+    private enum Type {DOUBLE, LONG, BOOLEAN, NUMBER, OBJECT}
+
+    /** Thrown while analysing or generating code that cannot be compiled. */
+    private static final class NotCompilable extends RuntimeException {
+        NotCompilable(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    private final JPLContext context;
+    private final String name;
+    private final List<String> params;
+    private final JsonNode body;
+    private final String className;
+    private final String runDescriptor;
+
+    // Analysis
+    private final Map<String, Type> types = new HashMap<>();
+    private final List<Type> returnTypes = new ArrayList<>();
+    private Type callType = Type.NUMBER;
+
+    // Code generation
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<String, Integer> rebound = new HashMap<>();
+    private Set<String> assigned = new HashSet<>();
+    private Code code;
+    private Label breakLabel;
+    private Label continueLabel;
+
+    private FunctionCompiler(JPLContext context, String name, JPLContext.FunctionDef fn) {
+        this.context = context;
+        this.name = name;
+        this.params = fn.params;
+        this.body = fn.body;
+        this.className = "com/kapil/jpl/core/Compiled_" + name.replaceAll("[^A-Za-z0-9_]", "_");
+        this.runDescriptor = "(" + OBJECT.repeat(fn.params.size()) + ")" + OBJECT;
+    }
+
+    /**
+     * Compiles a function.
+     *
+     * @param context The context the function runs in; its operators and constants are checked.
+     * @param name    The function's name, used for recursive calls.
+     * @param fn      The function.
+     * @return The compiled function, or null if it uses something that cannot be compiled.
+     */
+    static CompiledFunction compile(JPLContext context, String name, JPLContext.FunctionDef fn) {
+        try {
+            return new FunctionCompiler(context, name, fn).compile();
+        } catch (NotCompilable | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private CompiledFunction compile() {
+        if (body == null || !body.isArray() || params.size() > 200 || new HashSet<>(params).size() != params.size()) {
+            throw new NotCompilable("unsupported signature");
+        }
+        infer();
+        if (!endsWithNull(body)) {
+            throw new NotCompilable("falls through with a value");
+        }
+
+        BytecodeWriter writer = new BytecodeWriter();
+
+        Code init = writer.method(ACC_PUBLIC, "<init>", "([" + OBJECT + "L" + BUDGET + ";I)V", 4);
+        init.local(ALOAD, 0);
+        init.local(ALOAD, 1);
+        init.local(ALOAD, 2);
+        init.local(ILOAD, 3);
+        init.invoke(INVOKESPECIAL, BASE, "<init>", "([" + OBJECT + "L" + BUDGET + ";I)V");
+        init.op(RETURN, 0);
+
+        // invoke(Object[]): check every argument is a number, then run the body
+        Code invoke = writer.method(0, "invoke", "([" + OBJECT + ")" + OBJECT, 2);
+        Label deopt = new Label();
+        for (int i = 0; i < params.size(); i++) {
+            invoke.local(ALOAD, 1);
+            invoke.iconst(i);
+            invoke.op(AALOAD, -1);
+            invoke.type(INSTANCEOF, "java/lang/Number");
+            invoke.jump(IFEQ, deopt);
+        }
+        invoke.local(ALOAD, 0);
+        for (int i = 0; i < params.size(); i++) {
+            invoke.local(ALOAD, 1);
+            invoke.iconst(i);
+            invoke.op(AALOAD, -1);
+        }
+        invoke.invoke(INVOKESPECIAL, className, "run", runDescriptor);
+        invoke.op(ARETURN, -1);
+        invoke.bind(deopt);
+        invoke.field(GETSTATIC, BASE, "DEOPT", OBJECT);
+        invoke.op(ARETURN, -1);
+
+        // run(...) is private and called with invokespecial, as javac did for version 49 classes
+        code = writer.method(ACC_PRIVATE, "run", runDescriptor, params.size() + 1);
+        for (int i = 0; i < params.size(); i++) {
+            slots.put(params.get(i), i + 1);
+            assigned.add(params.get(i));
+        }
+        for (JsonNode stmt : body) {
+            statement(stmt);
+        }
+        if (code.reachable()) {
+            code.op(ACONST_NULL, 1);
+            code.op(ARETURN, -1);
+        }
+        code = null;
+
+        byte[] bytes = writer.toByteArray(ACC_FINAL | ACC_SUPER, className, BASE);
+        try {
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(bytes, true);
+            return (CompiledFunction) hidden.findConstructor(hidden.lookupClass(),
+                            MethodType.methodType(void.class, Object[].class, ExecutionBudget.class, int.class))
+                    .invoke(constants.toArray(), context.getBudget(), context.getConstants().size());
+        } catch (Throwable e) {
+            throw new NotCompilable("rejected by the JVM: " + e);
+        }
+    }
+
+    // ---- Type inference ----
+
+    /**
+     * Works out the type of every variable. Assignments are revisited until the types stop
+     * changing, since a loop can feed a variable's value back into itself.
+     */
+    private void infer() {
+        for (int round = 0; ; round++) {
+            types.clear();
+            for (String param : params) types.put(param, Type.NUMBER);
+            Map<String, Type> before;
+            int passes = 0;
+            do {
+                if (++passes > 10) throw new NotCompilable("types do not settle");
+                before = new HashMap<>(types);
+                returnTypes.clear();
+                inferBlock(body);
+            } while (!types.equals(before));
+
+            boolean numeric = returnTypes.stream().allMatch(t -> t == null || isNumeric(t));
+            if (numeric || callType == Type.OBJECT || round > 0) return;
+            // Recursive calls return something other than numbers; try again with that
+            callType = Type.OBJECT;
+        }
+    }
+
+    private void inferBlock(JsonNode block) {
+        if (block == null) return;
+        if (block.isArray()) {
+            for (JsonNode stmt : block) inferStatement(stmt);
+        } else {
+            inferStatement(block);
+        }
+    }
+
+    private void inferStatement(JsonNode stmt) {
+        if (!stmt.isObject()) return;
+        if (stmt.has("let")) {
+            for (Map.Entry<String, JsonNode> binding : stmt.get("let").properties()) {
+                assign(binding.getKey(), typeOf(binding.getValue(), true));
+            }
+        } else if (stmt.has("return")) {
+            returnTypes.add(typeOf(stmt.get("return"), true));
+        } else if (stmt.has("if")) {
+            inferBlock(stmt.get("if").get("then"));
+            inferBlock(stmt.get("if").get("else"));
+        } else if (stmt.has("while") && stmt.has("do")) {
+            inferBlock(stmt.get("do"));
+        } else if (stmt.has("for")) {
+            JsonNode var = stmt.get("for").get("var");
+            if (var != null) assign(var.asText(), Type.LONG);
+            inferBlock(stmt.get("for").get("do"));
+        }
+    }
+
+    private void assign(String variable, Type type) {
+        if (type == null) return;
+        Type current = types.get(variable);
+        if (current == null || current == type) {
+            types.put(variable, type);
+        } else if ((current == Type.NUMBER && type == Type.DOUBLE) || (current == Type.DOUBLE && type == Type.NUMBER)) {
+            types.put(variable, Type.NUMBER);
+        } else {
+            throw new NotCompilable("'" + variable + "' holds values of different types");
+        }
+    }
+
+    /**
+     * The type an expression produces.
+     *
+     * @param inferring true during inference, where variables of unknown type are allowed.
+     * @return The type, or null for a variable whose type is not known yet.
+     */
+    private Type typeOf(JsonNode node, boolean inferring) {
+        if (node == null || node.isNull()) return Type.OBJECT;
+        if (node.isNumber()) return Type.NUMBER;
+        if (node.isBoolean()) return Type.BOOLEAN;
+        if (node.isTextual()) {
+            String variable = node.asText();
+            if (rebound.containsKey(variable)) return Type.NUMBER;
+            Type type = types.get(variable);
+            if (inferring) return type;
+            if (type == null || !assigned.contains(variable)) {
+                throw new NotCompilable("reads '" + variable + "', which it has not assigned");
+            }
+            return type;
+        }
+        if (node.isObject() && node.size() == 1) {
+            String key = node.fieldNames().next();
+            if (key.equals("call")) {
+                selfCallArgs(node.get("call"));
+                return callType;
+            }
+            String op = operator(key);
+            return switch (op) {
+                case "add", "sub", "mul", "div", "mod", "neg" -> Type.DOUBLE;
+                default -> MATH_UNARY.contains(op) || MATH_BINARY.contains(op) ? Type.DOUBLE : Type.BOOLEAN;
+            };
+        }
+        throw new NotCompilable("unsupported expression " + node);
+    }
+
+    private String operator(String key) {
+        String op = OPERATORS.get(key);
+        if (op == null || !context.isCoreOperator(key)) {
+            throw new NotCompilable("unsupported operator " + key);
+        }
+        return op;
+    }
+
+    private JsonNode selfCallArgs(JsonNode call) {
+        if (call == null || !call.isObject() || call.size() != 1 || !call.has(name)) {
+            throw new NotCompilable("calls another function");
+        }
+        JsonNode args = call.get(name);
+        if (!args.isArray() || args.size() != params.size()) {
+            throw new NotCompilable("recursive call with the wrong arguments");
+        }
+        return args;
+    }
+
+    private static boolean isNumeric(Type type) {
+        return type == Type.DOUBLE || type == Type.LONG || type == Type.NUMBER;
+    }
+
+    /**
+     * Whether running off the end of a block yields null, as it does when the last statement is a
+     * {@code let}, a loop or a {@code return}. The interpreter returns the value of the last
+     * statement of a function that does not return, which compiled code does not track.
+     */
+    private static boolean endsWithNull(JsonNode block) {
+        if (block == null || block.isNull()) return true;
+        JsonNode last = block.isArray() ? (block.isEmpty() ? null : block.get(block.size() - 1)) : block;
+        if (last == null) return true;
+        if (!last.isObject()) return false;
+        if (last.has("if")) {
+            return endsWithNull(last.get("if").get("then")) && endsWithNull(last.get("if").get("else"));
+        }
+        return last.has("let") || last.has("return") || last.has("for") || last.has("break") || last.has("continue")
+                || (last.has("while") && last.has("do")) || COMMENTS.stream().anyMatch(last::has);
+    }
+
+    // ---- Code generation ----
+
+    private void block(JsonNode block) {
+        if (block == null || block.isNull()) return;
+        if (block.isArray()) {
+            for (JsonNode stmt : block) statement(stmt);
+        } else {
+            statement(block);
+        }
+    }
+
+    private void statement(JsonNode stmt) {
+        if (!stmt.isObject()) throw new NotCompilable("unsupported statement " + stmt);
+        if (!code.reachable()) return;
+        tick();
+        if (stmt.size() == 2 && stmt.has("while") && stmt.has("do")) {
+            whileLoop(stmt.get("while"), stmt.get("do"));
+            return;
+        }
+        if (stmt.size() != 1) throw new NotCompilable("unsupported statement " + stmt);
+        String key = stmt.fieldNames().next();
+        JsonNode value = stmt.get(key);
+        if (COMMENTS.contains(key)) return;
+        switch (key) {
+            case "return" -> {
+                value(value, Type.OBJECT);
+                code.op(ARETURN, -1);
+            }
+            case "let" -> let(value);
+            case "if" -> ifStatement(value);
+            case "for" -> forLoop(value);
+            case "break", "continue" -> {
+                Label target = key.equals("break") ? breakLabel : continueLabel;
+                if (target == null) throw new NotCompilable(key + " outside a loop");
+                code.jump(GOTO, target);
+            }
+            default -> {
+                // An expression used as a statement; its value is discarded
+                Type type = typeOf(stmt, false);
+                natural(stmt, type);
+                code.op(type == Type.DOUBLE || type == Type.LONG ? POP2 : POP, type == Type.DOUBLE || type == Type.LONG ? -2 : -1);
+            }
+        }
+    }
+
+    private void let(JsonNode bindings) {
+        if (!bindings.isObject() || bindings.isEmpty()) throw new NotCompilable("unsupported let");
+        for (Map.Entry<String, JsonNode> binding : bindings.properties()) {
+            String variable = binding.getKey();
+            if (context.getConstants().contains(variable)) {
+                throw new NotCompilable("assigns to constant " + variable);
+            }
+            Type type = types.get(variable);
+            if (type == null) throw new NotCompilable("cannot type '" + variable + "'");
+            value(binding.getValue(), type == Type.NUMBER ? Type.OBJECT : type);
+            store(variable, type);
+        }
+    }
+
+    private void store(String variable, Type type) {
+        Integer slot = slots.get(variable);
+        if (slot == null) {
+            slot = code.newLocal(type == Type.DOUBLE || type == Type.LONG ? 2 : 1);
+            slots.put(variable, slot);
+        }
+        code.local(switch (type) {
+            case DOUBLE -> DSTORE;
+            case LONG -> LSTORE;
+            case BOOLEAN -> ISTORE;
+            default -> ASTORE;
+        }, slot);
+        assigned.add(variable);
+    }
+
+    private void ifStatement(JsonNode ifNode) {
+        if (!ifNode.isObject()) throw new NotCompilable("unsupported if");
+        JsonNode condition = ifNode.get("cond");
+        if (condition == null) {
+            for (Map.Entry<String, JsonNode> field : ifNode.properties()) {
+                if (!field.getKey().equals("then") && !field.getKey().equals("else")) {
+                    condition = field.getValue();
+                    break;
+                }
+            }
+        }
+        if (condition == null || typeOf(condition, false) != Type.BOOLEAN) {
+            throw new NotCompilable("if condition is not a boolean");
+        }
+        Label otherwise = new Label();
+        Label end = new Label();
+        Set<String> before = assigned;
+        branch(condition, otherwise, false);
+
+        assigned = new HashSet<>(before);
+        block(ifNode.get("then"));
+        Set<String> afterThen = assigned;
+        if (code.reachable()) code.jump(GOTO, end);
+
+        code.bind(otherwise);
+        assigned = new HashSet<>(before);
+        block(ifNode.get("else"));
+        assigned.retainAll(afterThen);
+        code.bind(end);
+    }
+
+    private void whileLoop(JsonNode condition, JsonNode body) {
+        if (!body.isArray() || typeOf(condition, false) != Type.BOOLEAN) {
+            throw new NotCompilable("unsupported while loop");
+        }
+        Label top = new Label();
+        Label end = new Label();
+        code.bind(top);
+        branch(condition, end, false);
+        tick();
+        loopBody(body, end, top);
+        code.jump(GOTO, top);
+        code.bind(end);
+    }
+
+    private void forLoop(JsonNode forNode) {
+        JsonNode var = forNode.get("var");
+        JsonNode body = forNode.get("do");
+        if (var == null || !var.isTextual() || body == null || !body.isArray()
+                || !forNode.has("from") || !forNode.has("to")) {
+            throw new NotCompilable("unsupported for loop");
+        }
+        String variable = var.asText();
+        if (types.get(variable) != Type.LONG) throw new NotCompilable("loop variable reused");
+
+        int counter = code.newLocal(2);
+        int to = code.newLocal(2);
+        int step = code.newLocal(2);
+        int trips = code.newLocal(2);
+        int n = code.newLocal(2);
+        value(forNode.get("from"), Type.LONG);
+        code.local(LSTORE, counter);
+        value(forNode.get("to"), Type.LONG);
+        code.local(LSTORE, to);
+        if (forNode.has("step")) {
+            value(forNode.get("step"), Type.LONG);
+        } else {
+            code.lconst(1);
+        }
+        code.local(LSTORE, step);
+        code.local(LLOAD, counter);
+        code.local(LLOAD, to);
+        code.local(LLOAD, step);
+        code.invoke(INVOKESTATIC, LOOP_BOUNDS, "tripCount", "(JJJ)J");
+        code.local(LSTORE, trips);
+        code.lconst(0);
+        code.local(LSTORE, n);
+
+        Label top = new Label();
+        Label next = new Label();
+        Label end = new Label();
+        code.bind(top);
+        code.local(LLOAD, n);
+        code.local(LLOAD, trips);
+        code.invoke(INVOKESTATIC, "java/lang/Long", "compareUnsigned", "(JJ)I");
+        code.jump(IFGE, end);
+        tick();
+        code.local(LLOAD, counter);
+        Set<String> before = assigned;
+        assigned = new HashSet<>(before);
+        store(variable, Type.LONG);
+        loopBody(body, end, next);
+        assigned = before;
+        code.bind(next);
+        code.local(LLOAD, n);
+        code.lconst(1);
+        code.op(LADD, -2);
+        code.local(LSTORE, n);
+        code.local(LLOAD, counter);
+        code.local(LLOAD, step);
+        code.op(LADD, -2);
+        code.local(LSTORE, counter);
+        code.jump(GOTO, top);
+        code.bind(end);
+    }
+
+    private void loopBody(JsonNode body, Label breakTo, Label continueTo) {
+        Label outerBreak = breakLabel;
+        Label outerContinue = continueLabel;
+        Set<String> before = assigned;
+        breakLabel = breakTo;
+        continueLabel = continueTo;
+        assigned = new HashSet<>(assigned);
+        for (JsonNode stmt : body) {
+            statement(stmt);
+        }
+        assigned = before;
+        breakLabel = outerBreak;
+        continueLabel = outerContinue;
+    }
+
+    /**
+     * Emits an expression converted to the given type.
+     */
+    private void value(JsonNode node, Type want) {
+        if (node != null && node.isNumber() && (want == Type.DOUBLE || want == Type.LONG)) {
+            if (want == Type.DOUBLE) {
+                code.dconst(node.numberValue().doubleValue());
+            } else {
+                code.lconst(node.numberValue().longValue());
+            }
+            return;
+        }
+        Type type = typeOf(node, false);
+        natural(node, type);
+        convert(type, want);
+    }
+
+    private void convert(Type from, Type to) {
+        if (from == to || (to == Type.OBJECT && from == Type.NUMBER)) return;
+        switch (to) {
+            case DOUBLE -> {
+                if (from == Type.NUMBER) {
+                    code.type(CHECKCAST, "java/lang/Number");
+                    code.invoke(INVOKEVIRTUAL, "java/lang/Number", "doubleValue", "()D");
+                    return;
+                }
+                if (from == Type.LONG) {
+                    code.op(L2D, 0);
+                    return;
+                }
+            }
+            case LONG -> {
+                if (from == Type.NUMBER) {
+                    code.type(CHECKCAST, "java/lang/Number");
+                    code.invoke(INVOKEVIRTUAL, "java/lang/Number", "longValue", "()J");
+                    return;
+                }
+                if (from == Type.DOUBLE) {
+                    code.op(D2L, 0);
+                    return;
+                }
+            }
+            case OBJECT -> {
+                switch (from) {
+                    case DOUBLE -> code.invoke(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+                    case LONG -> code.invoke(INVOKESTATIC, INTERPRETER, "boxCounter", "(J)" + OBJECT);
+                    case BOOLEAN -> code.invoke(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+                    default -> throw new NotCompilable("cannot convert " + from);
+                }
+                return;
+            }
+            default -> {
+            }
+        }
+        throw new NotCompilable("a " + from + " value is used as " + to);
+    }
+
+    /**
+     * Emits an expression, leaving its value on the stack as its own type.
+     */
+    private void natural(JsonNode node, Type type) {
+        if (node == null || node.isNull()) {
+            code.op(ACONST_NULL, 1);
+        } else if (node.isNumber()) {
+            code.local(ALOAD, 0);
+            code.field(GETFIELD, BASE, "constants", "[" + OBJECT);
+            code.iconst(constants.size());
+            code.op(AALOAD, -1);
+            constants.add(node.numberValue());
+        } else if (node.isBoolean()) {
+            code.iconst(node.booleanValue() ? 1 : 0);
+        } else if (node.isTextual()) {
+            String variable = node.asText();
+            Integer slot = rebound.containsKey(variable) ? rebound.get(variable) : slots.get(variable);
+            code.local(switch (type) {
+                case DOUBLE -> DLOAD;
+                case LONG -> LLOAD;
+                case BOOLEAN -> ILOAD;
+                default -> ALOAD;
+            }, slot);
+        } else {
+            String key = node.fieldNames().next();
+            JsonNode operands = node.get(key);
+            if (key.equals("call")) {
+                selfCall(selfCallArgs(operands));
+                return;
+            }
+            String op = operator(key);
+            switch (op) {
+                case "add", "sub", "mul", "div", "mod", "pow", "hypot", "atan2" -> {
+                    binary(operands);
+                    value(operands.get(0), Type.DOUBLE);
+                    value(operands.get(1), Type.DOUBLE);
+                    switch (op) {
+                        case "add" -> code.op(DADD, -2);
+                        case "sub" -> code.op(DSUB, -2);
+                        case "mul" -> code.op(DMUL, -2);
+                        case "div" -> code.op(DDIV, -2);
+                        case "mod" -> code.op(DREM, -2);
+                        default -> code.invoke(INVOKESTATIC, "java/lang/Math", op, "(DD)D");
+                    }
+                }
+                case "neg" -> {
+                    if (operands.isArray()) throw new NotCompilable(op + " of an array");
+                    value(operands, Type.DOUBLE);
+                    code.op(DNEG, 0);
+                }
+                case String unary when MATH_UNARY.contains(unary) -> {
+                    if (operands.isArray()) throw new NotCompilable(op + " of an array");
+                    value(operands, Type.DOUBLE);
+                    code.invoke(INVOKESTATIC, "java/lang/Math", op, "(D)D");
+                }
+                case "eq" -> {
+                    binary(operands);
+                    Type a = typeOf(operands.get(0), false);
+                    Type b = typeOf(operands.get(1), false);
+                    if (a == Type.DOUBLE && b == Type.DOUBLE) {
+                        value(operands.get(0), Type.DOUBLE);
+                        value(operands.get(1), Type.DOUBLE);
+                        code.invoke(INVOKESTATIC, BASE, "equal", "(DD)Z");
+                    } else {
+                        value(operands.get(0), Type.OBJECT);
+                        value(operands.get(1), Type.OBJECT);
+                        code.invoke(INVOKESTATIC, BASE, "equal", "(" + OBJECT + OBJECT + ")Z");
+                    }
+                }
+                default -> {
+                    // Comparisons and logic: branch, then materialise 0 or 1
+                    Label no = new Label();
+                    Label end = new Label();
+                    branch(node, no, false);
+                    code.iconst(1);
+                    code.jump(GOTO, end);
+                    code.bind(no);
+                    code.iconst(0);
+                    code.bind(end);
+                }
+            }
+        }
+    }
+
+    /**
+     * Emits a jump to {@code target} taken when the boolean expression equals {@code when}.
+     */
+    private void branch(JsonNode node, Label target, boolean when) {
+        String op = node.isObject() && node.size() == 1 ? OPERATORS.get(node.fieldNames().next()) : null;
+        if (op == null || op.equals("eq") || typeOf(node, false) != Type.BOOLEAN) {
+            value(node, Type.BOOLEAN);
+            code.jump(when ? IFNE : IFEQ, target);
+            return;
+        }
+        JsonNode operands = node.get(node.fieldNames().next());
+        switch (op) {
+            case "lt", "lte", "gt", "gte" -> {
+                binary(operands);
+                value(operands.get(0), Type.DOUBLE);
+                value(operands.get(1), Type.DOUBLE);
+                // dcmpg makes NaN compare greater and dcmpl less, so every comparison with NaN is false
+                boolean less = op.startsWith("l");
+                code.op(less ? DCMPG : DCMPL, -3);
+                int opcode = switch (op) {
+                    case "lt" -> when ? IFLT : IFGE;
+                    case "lte" -> when ? IFLE : IFGT;
+                    case "gt" -> when ? IFGT : IFLE;
+                    default -> when ? IFGE : IFLT;
+                };
+                code.jump(opcode, target);
+            }
+            case "not" -> {
+                if (!operands.isArray() || operands.size() != 1) throw new NotCompilable("unsupported not");
+                requireBoolean(operands.get(0));
+                branch(operands.get(0), target, !when);
+            }
+            default -> {
+                // and / or, short-circuiting like the interpreter
+                binary(operands);
+                requireBoolean(operands.get(0));
+                requireBoolean(operands.get(1));
+                boolean and = op.equals("and");
+                if (when != and) {
+                    // and jumping when false, or or jumping when true: either operand decides
+                    branch(operands.get(0), target, when);
+                    branch(operands.get(1), target, when);
+                } else {
+                    Label skip = new Label();
+                    branch(operands.get(0), skip, !when);
+                    branch(operands.get(1), target, when);
+                    code.bind(skip);
+                }
+            }
+        }
+    }
+
+    private void requireBoolean(JsonNode node) {
+        if (typeOf(node, false) != Type.BOOLEAN) throw new NotCompilable("logic on a non-boolean");
+    }
+
+    private static void binary(JsonNode operands) {
+        if (!operands.isArray() || operands.size() != 2) throw new NotCompilable("expected two operands");
+    }
+
+    /**
+     * Emits a recursive call. Like the interpreter, each argument is evaluated after the parameters
+     * before it have been bound, so an argument that names an earlier parameter sees its new value.
+     */
+    private void selfCall(JsonNode args) {
+        Map<String, Integer> outer = new HashMap<>(rebound);
+        int[] temps = new int[args.size()];
+        for (int i = 0; i < args.size(); i++) {
+            if (!isNumeric(typeOf(args.get(i), false))) throw new NotCompilable("non-numeric argument");
+            value(args.get(i), Type.OBJECT);
+            temps[i] = code.newLocal(1);
+            code.local(ASTORE, temps[i]);
+            rebound.put(params.get(i), temps[i]);
+        }
+        rebound.clear();
+        rebound.putAll(outer);
+
+        budgetCall("enterCall");
+        code.local(ALOAD, 0);
+        for (int temp : temps) {
+            code.local(ALOAD, temp);
+        }
+        code.invoke(INVOKESPECIAL, className, "run", runDescriptor);
+        budgetCall("exitCall");
+        if (callType == Type.NUMBER) {
+            code.type(CHECKCAST, "java/lang/Number");
+        }
+    }
+
+    private void tick() {
+        budgetCall("tick");
+    }
+
+    private void budgetCall(String method) {
+        code.local(ALOAD, 0);
+        code.field(GETFIELD, BASE, "budget", "L" + BUDGET + ";");
+        code.invoke(INVOKEVIRTUAL, BUDGET, method, "()V");
+    }
+}
@@ -0,0 +1,188 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads and parses every module a program imports, directly or through other modules, before the
+ * program runs, on a pool of worker threads.
+ * <p>
+ * The program is scanned for {@code import}, {@code laao} and {@code bring} instructions anywhere in
+ * its tree, including branches that may never run. Each one is resolved the way the interpreter
+ * resolves it: relative to the directory of the importing file, then in the standard library. Every
+ * module found is loaded into a {@link ModuleCache} on its own task, and the modules it imports are
+ * submitted as soon as it is parsed, so the whole graph is read with as many files in flight as
+ * there are workers. A module reached from several places is loaded once.
+ * <p>
+ * The walk records which modules each module imports. Once every module has been read, the graph is
+ * searched for a cycle from the program, in source order, so the same program always reports the
+ * same cycle; a cycle is an error, since running it would import forever.
+ * <p>
+ * Nothing runs here. The interpreter still executes each module when its import is reached, which
+ * runs every module after the modules it imports, in the same order as before. A module that cannot
+ * be read or parsed is skipped, so its import fails with the usual error when, and only if, it runs.
+ */
+final class ImportGraph {
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), task -> {
+                Thread thread = new Thread(task, "jpl-import");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final ModuleCache modules;
+    private final File standardLibDir;
+    private final Set<Object> seen = ConcurrentHashMap.newKeySet();
+    /** The modules each loaded module imports, in source order: a file's path, or "lib:" and a library name. */
+    private final Map<Object, List<Object>> edges = new ConcurrentHashMap<>();
+    private final AtomicInteger loaded = new AtomicInteger();
+    /** One party per task in flight, plus the caller. */
+    private final Phaser pending = new Phaser(1);
+
+    private ImportGraph(ModuleCache modules, File standardLibDir) {
+        this.modules = modules;
+        this.standardLibDir = standardLibDir;
+    }
+
+    /**
+     * Loads the modules imported by a program into a cache, returning once all have been read.
+     *
+     * @param modules        The cache to load into.
+     * @param standardLibDir The standard library directory, checked after the importing file's directory.
+     * @param file           The program's file; its imports are relative to its directory.
+     * @param root           The program.
+     * @return How many modules were loaded.
+     * @throws JPLException If the program imports itself, directly or through other modules.
+     */
+    static int preload(ModuleCache modules, File standardLibDir, File file, JsonNode root) {
+        List<String> imports = imports(root);
+        if (imports.isEmpty()) return 0;
+        ImportGraph graph = new ImportGraph(modules, standardLibDir);
+        Path program = file.toPath().toAbsolutePath().normalize();
+        graph.seen.add(program);
+        graph.resolveAll(program, file, imports);
+        graph.pending.arriveAndAwaitAdvance();
+        graph.checkCycles(program, new LinkedHashSet<>(), new HashSet<>());
+        return graph.loaded.get();
+    }
+
+    private void resolveAll(Object importerKey, File importer, List<String> paths) {
+        File dir = importer.getAbsoluteFile().getParentFile();
+        List<Object> targets = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            File module = dir != null ? new File(dir, path) : null;
+            if (module != null && module.exists()) {
+                Path key = module.toPath().toAbsolutePath().normalize();
+                targets.add(key);
+                if (seen.add(key)) submit(() -> loadModule(key.toFile()));
+            } else {
+                String key = "lib:" + path;
+                targets.add(key);
+                // A library's statements run as if written in the importing file, so its imports
+                // are relative to that file too
+                if (seen.add(key)) submit(() -> loadLibrary(key, importer, path));
+            }
+        }
+        edges.put(importerKey, targets);
+    }
+
+    /**
+     * Depth-first search from a module, following imports in source order.
+     *
+     * @param module  The module to search from.
+     * @param path    The chain of imports that led here, in order.
+     * @param checked Modules already searched, which lead to no cycle.
+     * @throws JPLException If an import leads back to a module on the chain.
+     */
+    private void checkCycles(Object module, Set<Object> path, Set<Object> checked) {
+        if (checked.contains(module)) return;
+        if (!path.add(module)) {
+            List<String> chain = new ArrayList<>();
+            boolean inCycle = false;
+            for (Object step : path) {
+                inCycle |= step.equals(module);
+                if (inCycle) chain.add(name(step));
+            }
+            chain.add(name(module));
+            throw new JPLException("Import cycle: " + String.join(" → ", chain));
+        }
+        for (Object target : edges.getOrDefault(module, List.of())) {
+            checkCycles(target, path, checked);
+        }
+        path.remove(module);
+        checked.add(module);
+    }
+
+    private static String name(Object module) {
+        return module instanceof Path file ? file.getFileName().toString() : module.toString().substring("lib:".length());
+    }
+
+    private void submit(Runnable task) {
+        pending.register();
+        POOL.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                pending.arriveAndDeregister();
+            }
+        });
+    }
+
+    private void loadModule(File module) {
+        JsonNode root;
+        try {
+            root = modules.load(module).root();
+        } catch (Exception e) {
+            // Reported by the import itself, if it runs
+            return;
+        }
+        loaded.incrementAndGet();
+        resolveAll(module.toPath().toAbsolutePath().normalize(), module, imports(root));
+    }
+
+    private void loadLibrary(String key, File importer, String path) {
+        List<String> imports = new ArrayList<>();
+        try {
+            LibraryIndex library = LibraryIndex.find(standardLibDir, path);
+            if (library == null) return;
+            for (LibraryIndex.Entry entry : library.entries()) {
+                if (entry.function() == null) collect(library.parse(entry), imports);
+            }
+        } catch (Exception e) {
+            return;
+        }
+        resolveAll(key, importer, imports);
+    }
+
+    private static List<String> imports(JsonNode root) {
+        List<String> imports = new ArrayList<>();
+        collect(root, imports);
+        return imports;
+    }
+
+    private static void collect(JsonNode node, List<String> imports) {
+        if (node.isObject()) {
+            for (String keyword : new String[]{"import", "laao", "bring"}) {
+                JsonNode path = node.get(keyword);
+                if (path != null && path.isTextual()) imports.add(path.asText());
+            }
+        }
+        if (node.isContainerNode()) {
+            for (JsonNode child : node) collect(child, imports);
+        }
+    }
+}
@@ -1,9 +1,18 @@
 package com.kapil.jpl.core;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.POJONode;
 import com.kapil.jpl.exceptions.JPLException;
+import com.kapil.jpl.lib.JPLNatives;
+import com.kapil.jpl.lib.JPLOperator;
+import com.kapil.jpl.lib.JPLResolver;
+import com.kapil.jpl.lib.MathOperators;
+import com.kapil.jpl.lib.SequenceOperators;
+import com.kapil.jpl.lib.StringOperators;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * JPLContext manages the execution context for JPL scripts,
@@ -13,6 +22,123 @@ public class JPLContext {
     private final Map<String, Object> variables = new HashMap<>();
     private final Set<String> constants = new HashSet<>();
     private final Map<String, FunctionDef> functions = new HashMap<>();
+    private final Map<String, Supplier<FunctionDef>> lazyFunctions = new HashMap<>();
+    private final JPLResolver resolver;
+    private final JPLNatives natives;
+    private final ExecutionBudget budget;
+    private SplittableRandom random;
+    private boolean deferredCode;
+
+    private static final JPLResolver CORE_OPERATORS = createCoreOperators();
+    private static final JPLResolver BUILTIN_OPERATORS = CORE_OPERATORS.copy()
+            .loadProviders(JPLContext.class.getClassLoader());
+    private static final JPLNatives BUILTIN_NATIVES = JPLNatives.builtins()
+            .loadProviders(JPLContext.class.getClassLoader());
+
+    public JPLContext() {
+        resolver = BUILTIN_OPERATORS.copy();
+        natives = BUILTIN_NATIVES.copy();
+        budget = new ExecutionBudget();
+        random = new SplittableRandom();
+    }
+
+    /**
+     * Creates the context for one branch of a parallel block. It starts with copies of the parent's
+     * variables, constants, functions, operators and natives, so what the branch defines stays private
+     * to it, while shared counters and maps are the same objects as in the parent. Called on the
+     * parent's thread.
+     *
+     * @param parent The context running the parallel block.
+     */
+    JPLContext(JPLContext parent) {
+        resolver = parent.resolver.copy();
+        natives = parent.natives.copy();
+        budget = parent.budget.fork();
+        random = parent.random.split();
+        variables.putAll(parent.variables);
+        constants.addAll(parent.constants);
+        deferredCode = parent.deferredCode;
+        // Fresh definitions, so each branch keeps its own profile and compiled code; functions the
+        // parent has not loaded yet stay lazy
+        parent.functions.forEach((name, fn) -> functions.put(name, new FunctionDef(fn.params, fn.body)));
+        lazyFunctions.putAll(parent.lazyFunctions);
+    }
+
+    /**
+     * Builds the registry of built-in operators. Every context starts from these plus any operators
+     * contributed through {@link com.kapil.jpl.lib.JPLOperatorProvider} on the classpath.
+     *
+     * @return The core operators.
+     */
+    private static JPLResolver createCoreOperators() {
+        JPLResolver r = new JPLResolver();
+
+        // Arithmetic (binary)
+        r.register("add", (ctx, ops) -> ctx.resolveArithmetic(ops, "+"));
+        r.register("sub", (ctx, ops) -> ctx.resolveArithmetic(ops, "-"));
+        r.register("mul", (ctx, ops) -> ctx.resolveArithmetic(ops, "*"));
+        r.register("div", (ctx, ops) -> ctx.resolveArithmetic(ops, "/"));
+        r.register("mod", (ctx, ops) -> ctx.resolveArithmetic(ops, "%"));
+        r.register("pow", (ctx, ops) -> ctx.resolveArithmetic(ops, "^"));
+
+        // Bitwise
+        r.register("&", (ctx, ops) -> ctx.resolveArithmetic(ops, "&"));
+        r.register("|", (ctx, ops) -> ctx.resolveArithmetic(ops, "|"));
+        r.register("^|", (ctx, ops) -> ctx.resolveArithmetic(ops, "^|"));
+        r.register("<<", (ctx, ops) -> ctx.resolveArithmetic(ops, "<<"));
+        r.register(">>", (ctx, ops) -> ctx.resolveArithmetic(ops, ">>"));
+        r.register(">>>", (ctx, ops) -> ctx.resolveArithmetic(ops, ">>>"));
+
+        // Arithmetic (unary)
+        r.register("sqrt", (ctx, op) -> ctx.resolveUnaryArithmetic(op, "sqrt"));
+        r.register("abs", (ctx, op) -> ctx.resolveUnaryArithmetic(op, "abs"));
+        r.register("neg", (ctx, op) -> ctx.resolveUnaryArithmetic(op, "neg"));
+        r.register("~", (ctx, op) -> ctx.resolveUnaryArithmetic(op, "~"));
+
+        // Logical
+        r.register("eq", (ctx, ops) -> ctx.resolveLogic(ops, "eq")).alias("==", "eq");
+        r.register("lt", (ctx, ops) -> ctx.resolveLogic(ops, "lt")).alias("<", "lt");
+        r.register("lte", (ctx, ops) -> ctx.resolveLogic(ops, "lte")).alias("<=", "lte");
+        r.register("gt", (ctx, ops) -> ctx.resolveLogic(ops, "gt")).alias(">", "gt");
+        r.register("gte", (ctx, ops) -> ctx.resolveLogic(ops, "gte")).alias(">=", "gte");
+        r.register("and", (ctx, ops) -> ctx.resolveLogic(ops, "and")).alias("&&", "and");
+        r.register("or", (ctx, ops) -> ctx.resolveLogic(ops, "or")).alias("||", "or");
+        r.register("not", (ctx, ops) -> ctx.resolveLogic(ops, "not")).alias("!", "not");
+
+        // Strings & natives
+        r.register("join", (ctx, ops) -> ctx.resolveJoin(ops));
+
+        // Field and element access
+        r.register("get", (ctx, ops) -> ctx.resolveGet(ops));
+        r.register("native", (ctx, expr) -> ctx.evaluateNative(expr));
+
+        // Lazy sequences
+        new SequenceOperators().registerOperators(r);
+
+        // Math functions, rounding, integers and random numbers
+        new MathOperators().registerOperators(r);
+
+        // Strings and regular expressions
+        new StringOperators().registerOperators(r);
+
+        // Shared counters and maps
+        r.register("incr", (ctx, ops) -> ctx.resolveIncr(ops));
+        r.register("cas", (ctx, ops) -> ctx.resolveCas(ops));
+
+        return r;
+    }
+
+    /**
+     * Checks whether a key still resolves to the built-in operator, i.e. it has not been
+     * replaced by a provider or a registration on this context.
+     *
+     * @param key The operator key.
+     * @return true if the key maps to the built-in operator.
+     */
+    public boolean isCoreOperator(String key) {
+        JPLOperator operator = resolver.lookup(key);
+        return operator != null && operator == CORE_OPERATORS.lookup(key);
+    }
 
     /**
      * Handles the 'let' operation in JPL, assigning variables in the context.
@@ -41,6 +167,7 @@ public class JPLContext {
     /**
      * Resolves a JSON node to its value in the current context.
      * Handles literals, variables, arithmetic, and logic expressions.
+     * JSON arrays resolve to a list of their resolved elements.
      *
      * @param node The JSON node to resolve.
      * @return The resolved value (may be a primitive, object, or result of an operation).
@@ -57,52 +184,22 @@ public class JPLContext {
 
         } else if (node.isNull()) {
             return null;
+        } else if (node.isArray()) {
+            List<Object> values = new ArrayList<>(node.size());
+            for (JsonNode element : node) {
+                values.add(resolve(element));
+            }
+            return values;
         } else if (node.isObject()) {
-            // Arithmetic (binary)
-            if (node.has("add")) return resolveArithmetic(node.get("add"), "+");
-            if (node.has("sub")) return resolveArithmetic(node.get("sub"), "-");
-            if (node.has("mul")) return resolveArithmetic(node.get("mul"), "*");
-            if (node.has("div")) return resolveArithmetic(node.get("div"), "/");
-            if (node.has("mod")) return resolveArithmetic(node.get("mod"), "%");
-            if (node.has("pow")) return resolveArithmetic(node.get("pow"), "^");
-
-            // Bitwise
-            if (node.has("&")) return resolveArithmetic(node.get("&"), "&");
-            if (node.has("|")) return resolveArithmetic(node.get("|"), "|");
-            if (node.has("^|")) return resolveArithmetic(node.get("^|"), "^|");
-            if (node.has("<<")) return resolveArithmetic(node.get("<<"), "<<");
-            if (node.has(">>")) return resolveArithmetic(node.get(">>"), ">>");
-            if (node.has(">>>")) return resolveArithmetic(node.get(">>>"), ">>>");
-
-            // Arithmetic (unary)
-            if (node.has("sqrt")) return resolveUnaryArithmetic(node.get("sqrt"), "sqrt");
-            if (node.has("abs")) return resolveUnaryArithmetic(node.get("abs"), "abs");
-            if (node.has("neg")) return resolveUnaryArithmetic(node.get("neg"), "neg");
-            if (node.has("~")) return resolveUnaryArithmetic(node.get("~"), "~");
-
-            // Logical
-            if (node.has("eq")) return resolveLogic(node.get("eq"), "eq");
-            if (node.has("==")) return resolveLogic(node.get("=="), "==");
-            if (node.has("lt")) return resolveLogic(node.get("lt"), "lt");
-            if (node.has("<")) return resolveLogic(node.get("<"), "<");
-            if (node.has("lte")) return resolveLogic(node.get("lte"), "lte");
-            if (node.has("<=")) return resolveLogic(node.get("<="), "<=");
-            if (node.has("gt")) return resolveLogic(node.get("gt"), "gt");
-            if (node.has(">")) return resolveLogic(node.get(">"), ">");
-            if (node.has("gte")) return resolveLogic(node.get("gte"), "gte");
-            if (node.has(">=")) return resolveLogic(node.get(">="), ">=");
-            if (node.has("and")) return resolveLogic(node.get("and"), "and");
-            if (node.has("&&")) return resolveLogic(node.get("&&"), "&&");
-            if (node.has("or")) return resolveLogic(node.get("or"), "or");
-            if (node.has("||")) return resolveLogic(node.get("||"), "||");
-            if (node.has("not")) return resolveLogic(node.get("not"), "not");
-            if (node.has("!")) return resolveLogic(node.get("!"), "!");
-            if (node.has("native")) {
-                String expr = node.get("native").asText();
-                return evaluateNative(expr);
+            for (Map.Entry<String, JsonNode> field : node.properties()) {
+                JPLOperator operator = resolver.lookup(field.getKey());
+                if (operator != null) return operator.apply(this, field.getValue());
             }
 
             throw new JPLException("Unknown expression: " + node);
+        } else if (node.isPojo()) {
+            // A value that is already evaluated, e.g. an operand from the explicit-stack evaluator
+            return ((POJONode) node).getPojo();
         }
         throw new JPLException("Unsupported node type: " + node);
     }
@@ -123,7 +220,7 @@ public class JPLContext {
 
         if ((op.equals("+") || op.equals("add")) && (!(a1 instanceof Number) || !(b1 instanceof Number))) {
             // String concatenation if either operand is not number
-            return String.valueOf(a1) + String.valueOf(b1);
+            return JPLString.concat(a1, b1);
         }
 
         Number a = asNumber(a1);
@@ -149,6 +246,104 @@ public class JPLContext {
         };
     }
 
+    /**
+     * Resolves the 'join' operation: {@code {"join": [separator, value1, value2, ...]}}.
+     * If a single value is given and it is a list, its elements are joined instead.
+     *
+     * @param operands JSON array whose first element is the separator.
+     * @return The joined text as a JPLString, so further 'add' calls can append to it cheaply.
+     */
+    private Object resolveJoin(JsonNode operands) {
+        if (!operands.isArray() || operands.isEmpty())
+            throw new JPLException("Invalid operands for join");
+
+        String separator = String.valueOf(JPLString.flatten(resolve(operands.get(0))));
+        List<Object> values = new ArrayList<>();
+        for (int i = 1; i < operands.size(); i++) {
+            values.add(resolve(operands.get(i)));
+        }
+        if (values.size() == 1 && values.get(0) instanceof Iterable<?> items) {
+            values = new ArrayList<>();
+            for (Object item : items) values.add(item);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) sb.append(separator);
+            sb.append(JPLString.flatten(values.get(i)));
+        }
+        return JPLString.of(sb);
+    }
+
+    /**
+     * Resolves the 'get' operation: {@code {"get": [value, key, ...]}}.
+     * Looks a key up in a map, e.g. a record read by {@code jpl pipe}, or an index up in a list,
+     * then each further key in the result. A key that is not found as it is but contains {@code .}
+     * or {@code [} is followed as a path, so {@code {"get": ["doc", "a.b[3].c"]}} reads
+     * {@code doc.a.b[3].c}. A missing key or an index out of range gives null.
+     *
+     * @param operands JSON array of the value followed by one or more keys.
+     * @return The value found, or null.
+     */
+    private Object resolveGet(JsonNode operands) {
+        if (!operands.isArray() || operands.size() < 2)
+            throw new JPLException("Invalid operands for get");
+
+        Object value = resolve(operands.get(0));
+        for (int i = 1; i < operands.size() && value != null; i++) {
+            Object key = JPLString.flatten(resolve(operands.get(i)));
+            value = key instanceof String path && isPath(path) && !(value instanceof Map<?, ?> map && map.containsKey(path))
+                    ? getPath(value, path)
+                    : getKey(value, key);
+        }
+        return value;
+    }
+
+    private Object getKey(Object value, Object key) {
+        if (value instanceof Map<?, ?> map) {
+            return map.get(String.valueOf(key));
+        } else if (value instanceof List<?> list) {
+            int index = asNumber(key).intValue();
+            return index >= 0 && index < list.size() ? list.get(index) : null;
+        }
+        throw new JPLException("Cannot get " + key + " from: " + value);
+    }
+
+    private static boolean isPath(String key) {
+        return key.indexOf('.') >= 0 || key.indexOf('[') >= 0;
+    }
+
+    /**
+     * Follows a path of names separated by {@code .} and list indexes in brackets, e.g. {@code a.b[3].c}.
+     */
+    private Object getPath(Object value, String path) {
+        int i = 0;
+        int length = path.length();
+        while (i < length && value != null) {
+            char c = path.charAt(i);
+            if (c == '[') {
+                int close = path.indexOf(']', i);
+                if (close < 0) throw new JPLException("Invalid path " + path + ": missing ']'");
+                int index;
+                try {
+                    index = Integer.parseInt(path, i + 1, close, 10);
+                } catch (NumberFormatException e) {
+                    throw new JPLException("Invalid path " + path + ": '" + path.substring(i + 1, close) + "' is not an index");
+                }
+                value = getKey(value, index);
+                i = close + 1;
+            } else if (c == '.') {
+                i++;
+            } else {
+                int end = i;
+                while (end < length && path.charAt(end) != '.' && path.charAt(end) != '[') end++;
+                value = getKey(value, path.substring(i, end));
+                i = end;
+            }
+        }
+        return value;
+    }
+
     /**
      * Resolves a unary arithmetic operation (sqrt, abs, neg).
      *
@@ -180,8 +375,8 @@ public class JPLContext {
     private Object resolveLogic(JsonNode operands, String op) {
         switch (op) {
             case "eq", "==" -> {
-                Object a = resolve(operands.get(0));
-                Object b = resolve(operands.get(1));
+                Object a = JPLString.flatten(resolve(operands.get(0)));
+                Object b = JPLString.flatten(resolve(operands.get(1)));
                 return Objects.equals(a, b);
             }
             case "lt", "<" -> {
@@ -237,6 +432,127 @@ public class JPLContext {
         return null;
     }
 
+    /**
+     * Handles the 'shared' operation: {@code {"shared": {"hits": 0, "seen": {}}}}. A number declares a
+     * {@link SharedCounter} and {@code {}} (or a map value) a concurrent map, for the branches of
+     * parallel blocks to update with 'incr' and 'cas'. Shared names cannot be reassigned.
+     *
+     * @param sharedNode JSON node containing the declarations.
+     * @return Always returns null.
+     */
+    public Object handleShared(JsonNode sharedNode) {
+        Iterator<String> fields = sharedNode.fieldNames();
+        while (fields.hasNext()) {
+            String name = fields.next();
+            if (constants.contains(name)) {
+                throw new JPLException("Variable already defined: " + name);
+            }
+            JsonNode init = sharedNode.get(name);
+            Object value = init.isObject() && init.isEmpty() ? new ConcurrentHashMap<>() : share(name, resolve(init));
+            variables.put(name, value);
+            constants.add(name);
+        }
+        return null;
+    }
+
+    private static Object share(String name, Object value) {
+        if (value instanceof SharedCounter || value instanceof ConcurrentHashMap) {
+            return value;
+        }
+        if (value instanceof Number n) {
+            return SharedCounter.of(n);
+        }
+        if (value instanceof Map<?, ?> entries) {
+            Map<Object, Object> map = new ConcurrentHashMap<>();
+            entries.forEach((k, v) -> {
+                if (k != null && v != null) map.put(sharedKey(k), JPLString.flatten(v));
+            });
+            return map;
+        }
+        throw new JPLException("Shared variable " + name + " must be a number (a counter) or {} (a map), got: " + value);
+    }
+
+    /**
+     * Resolves the 'incr' operation: {@code {"incr": ["hits", 1]}} adds to a shared counter and
+     * returns nothing; {@code {"incr": ["seen", key, 1]}} adds to a number in a shared map, atomically
+     * for that key, and returns the new value. The amount defaults to 1.
+     */
+    private Object resolveIncr(JsonNode operands) {
+        if (!operands.isArray() || operands.isEmpty() || operands.size() > 3)
+            throw new JPLException("Invalid operands for incr");
+        Object target = resolve(operands.get(0));
+        if (target instanceof SharedCounter counter) {
+            if (operands.size() > 2) throw new JPLException("Invalid operands for incr");
+            counter.add(operands.size() == 2 ? asNumber(resolve(operands.get(1))) : 1);
+            return null;
+        }
+        if (target instanceof ConcurrentHashMap<?, ?> shared) {
+            if (operands.size() < 2) throw new JPLException("incr on a shared map needs a key");
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> map = (Map<Object, Object>) shared;
+            String key = sharedKey(resolve(operands.get(1)));
+            Number delta = operands.size() == 3 ? asNumber(resolve(operands.get(2))) : 1;
+            return map.merge(key, delta, (current, d) -> {
+                Number n = asNumber(current);
+                Number by = (Number) d;
+                return SharedCounter.isInteger(n) && SharedCounter.isInteger(by)
+                        ? (Object) (n.longValue() + by.longValue())
+                        : (Object) (n.doubleValue() + by.doubleValue());
+            });
+        }
+        throw new JPLException("incr needs a shared counter or map, got: " + target);
+    }
+
+    /**
+     * Resolves the 'cas' operation: {@code {"cas": ["state", key, expected, value]}} sets the key of a
+     * shared map to the value only if it currently holds the expected one, and tells whether it did.
+     * A null expected value means the key must be absent; a null new value removes it. Numbers
+     * compare by value, so 1 matches 1.0.
+     */
+    private Object resolveCas(JsonNode operands) {
+        if (!operands.isArray() || operands.size() != 4)
+            throw new JPLException("Invalid operands for cas");
+        Object target = resolve(operands.get(0));
+        if (!(target instanceof ConcurrentHashMap<?, ?> shared)) {
+            throw new JPLException("cas needs a shared map, got: " + target
+                    + (target instanceof SharedCounter ? " (counters only support incr)" : ""));
+        }
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> map = (Map<Object, Object>) shared;
+        String key = sharedKey(resolve(operands.get(1)));
+        Object expected = JPLString.flatten(resolve(operands.get(2)));
+        Object update = JPLString.flatten(resolve(operands.get(3)));
+        while (true) {
+            Object current = map.get(key);
+            if (!sameValue(current, expected)) return false;
+            boolean swapped = current == null ? update == null || map.putIfAbsent(key, update) == null
+                    : update == null ? map.remove(key, current) : map.replace(key, current, update);
+            if (swapped) return true;
+        }
+    }
+
+    /**
+     * Keys are text, as for JSON objects, so 'get' finds them. A whole double is written as an
+     * integer, as 'switch' cases are, so 2 and {"add": [1, 1]} are the same key.
+     */
+    private static String sharedKey(Object key) {
+        key = JPLString.flatten(key);
+        if (key == null) throw new JPLException("Shared map keys cannot be null");
+        if (key instanceof Double d && d == Math.rint(d) && Math.abs(d) < 0x1p63) {
+            return Long.toString((long) (double) d);
+        }
+        return key.toString();
+    }
+
+    private static boolean sameValue(Object a, Object b) {
+        if (a instanceof Number x && b instanceof Number y) {
+            return SharedCounter.isInteger(x) && SharedCounter.isInteger(y)
+                    ? x.longValue() == y.longValue()
+                    : x.doubleValue() == y.doubleValue();
+        }
+        return Objects.equals(a, b);
+    }
+
     /**
      * Converts an object to a Number if possible.
      *
@@ -249,6 +565,53 @@ public class JPLContext {
         throw new JPLException("Expected number, got: " + value);
     }
 
+    /**
+     * Returns the operator registry used by this context.
+     * Operators registered here are only visible to this context.
+     *
+     * @return The context's operator registry.
+     */
+    public JPLResolver getResolver() {
+        return resolver;
+    }
+
+    /**
+     * Returns the native function registry used by this context.
+     * Natives registered here are only visible to this context.
+     *
+     * @return The context's native registry.
+     */
+    public JPLNatives getNatives() {
+        return natives;
+    }
+
+    /**
+     * Returns the execution limits that apply to runs in this context. All limits are off by default.
+     *
+     * @return The context's budget.
+     */
+    public ExecutionBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the generator behind the 'random' operator: a SplitMix64, fast and not for security.
+     *
+     * @return The context's random number generator.
+     */
+    public SplittableRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * Restarts the context's random numbers from a seed, so a run can be repeated exactly.
+     *
+     * @param seed The seed.
+     */
+    public void seedRandom(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
     /**
      * Returns the current variable map for this context.
      *
@@ -258,10 +621,33 @@ public class JPLContext {
         return variables;
     }
 
+    /**
+     * Records that a lazy sequence with a map or filter stage was built in this context. Its
+     * expression runs when the sequence is consumed and may read any variable then, so from now on
+     * loops write their counter to the context on every iteration.
+     */
+    public void markDeferredCode() {
+        deferredCode = true;
+    }
+
+    /**
+     * @return Whether a lazy sequence holding JPL expressions may exist in this context.
+     */
+    public boolean hasDeferredCode() {
+        return deferredCode;
+    }
+
     public static class FunctionDef {
         public List<String> params;
         public JsonNode body;
 
+        // Profile kept by the interpreter to decide when to compile the function
+        int hotness;
+        int deopts;
+        boolean nonNumericArgs;
+        boolean notCompilable;
+        CompiledFunction compiled;
+
         public FunctionDef(List<String> params, JsonNode body) {
             this.params = params;
             this.body = body;
@@ -271,14 +657,29 @@ public class JPLContext {
 
 
     /**
-     * Returns the current constant set for this context.
+     * Defines (or redefines) a function in this context.
      *
-     * @return Set of constant variable names.
+     * @param name   The function name.
+     * @param params The parameter names.
+     * @param body   The function body (an array of instructions).
      */
     public void defineFunction(String name, List<String> params, JsonNode body) {
+        lazyFunctions.remove(name);
         functions.put(name, new FunctionDef(params, body));
     }
 
+    /**
+     * Declares a function whose definition is only loaded the first time it is looked up.
+     * Replaces any existing function of the same name.
+     *
+     * @param name       The function name.
+     * @param definition Loads the definition; called at most once.
+     */
+    public void defineLazyFunction(String name, Supplier<FunctionDef> definition) {
+        functions.remove(name);
+        lazyFunctions.put(name, definition);
+    }
+
 
     /**
      * Retrieves a function definition by name.
@@ -288,82 +689,87 @@ public class JPLContext {
      * @throws JPLException if the function is not defined.
      */
     public FunctionDef getFunction(String name) {
-        if (!functions.containsKey(name)) {
+        FunctionDef fn = findFunction(name);
+        if (fn == null) {
             throw new JPLException("Function not defined: " + name);
         }
-        return functions.get(name);
-    }
-
-private Object evaluateNative(String expr) {
-    try {
-        switch (expr) {
-
-            // 🕒 Time & Date
-            case "java.time.LocalDateTime.now()":
-                return java.time.LocalDateTime.now().toString();
-            case "java.time.LocalDate.now()":
-                return java.time.LocalDate.now().toString();
-            case "java.time.Instant.now()":
-                return java.time.Instant.now().toString();
-            case "System.currentTimeMillis()":
-                return System.currentTimeMillis();
-            case "System.nanoTime()":
-                return System.nanoTime();
-
-            // 🖥️ System Info
-            case "os.name":
-                return System.getProperty("os.name");
-            case "os.arch":
-                return System.getProperty("os.arch");
-            case "os.version":
-                return System.getProperty("os.version");
-            case "java.version":
-                return System.getProperty("java.version");
-            case "java.vendor":
-                return System.getProperty("java.vendor");
-            case "user.name":
-                return System.getProperty("user.name");
-            case "user.home":
-                return System.getProperty("user.home");
-            case "user.dir":
-                return System.getProperty("user.dir");
-
-            // 🧠 Runtime Info
-            case "Runtime.maxMemory":
-                return Runtime.getRuntime().maxMemory();
-            case "Runtime.totalMemory":
-                return Runtime.getRuntime().totalMemory();
-            case "Runtime.freeMemory":
-                return Runtime.getRuntime().freeMemory();
-            case "Runtime.availableProcessors":
-                return Runtime.getRuntime().availableProcessors();
-
-            // 📦 Environment Variables (example ones)
-            case "env.JAVA_HOME":
-                return System.getenv("JAVA_HOME");
-            case "env.PATH":
-                return System.getenv("PATH");
-            case "env.USER":
-                return System.getenv("USER");
-            case "env.HOME":
-                return System.getenv("HOME");
-            case "env.USERNAME":
-                return System.getenv("USERNAME");
-
-            default:
-                // Dynamic support for "env.KEY"
-                if (expr.startsWith("env.")) {
-                    String key = expr.substring("env.".length());
-                    return System.getenv(key);
-                }
+        return fn;
+    }
 
-                throw new JPLException("Unsupported native expression: " + expr);
+    /**
+     * Looks up a function definition by name.
+     *
+     * @param name The name of the function.
+     * @return The FunctionDef, or null if no function with that name is defined.
+     */
+    public FunctionDef findFunction(String name) {
+        FunctionDef fn = functions.get(name);
+        if (fn == null && !lazyFunctions.isEmpty()) {
+            Supplier<FunctionDef> definition = lazyFunctions.remove(name);
+            if (definition != null) {
+                fn = definition.get();
+                functions.put(name, fn);
+            }
         }
-    } catch (Exception e) {
-        throw new JPLException("Native call failed: " + expr + " → " + e.getMessage());
+        return fn;
     }
-}
 
+    /**
+     * Returns the functions defined in this context, loading any that are still lazy.
+     *
+     * @return Unmodifiable map of function names to definitions.
+     */
+    public Map<String, FunctionDef> getFunctions() {
+        for (String name : new ArrayList<>(lazyFunctions.keySet())) {
+            findFunction(name);
+        }
+        return Collections.unmodifiableMap(functions);
+    }
 
+    /**
+     * Returns the current constant set for this context.
+     *
+     * @return Set of constant variable names.
+     */
+    public Set<String> getConstants() {
+        return constants;
+    }
+
+    /**
+     * Removes all variables, constants and functions from this context.
+     * Registered operators and natives are kept.
+     */
+    public void clear() {
+        variables.clear();
+        constants.clear();
+        functions.clear();
+        lazyFunctions.clear();
+        deferredCode = false;
+    }
 
-}
\ No newline at end of file
+    /**
+     * Evaluates a 'native' expression: either {@code "name"} for a no-argument native
+     * or {@code {"name": [args...]}} to pass resolved arguments.
+     *
+     * @param expr The JSON node stored under the 'native' key.
+     * @return The native's result.
+     */
+    private Object evaluateNative(JsonNode expr) {
+        if (expr.isTextual()) {
+            return natives.lookup(expr.asText()).invoke();
+        }
+        if (expr.isObject() && expr.size() == 1) {
+            Map.Entry<String, JsonNode> call = expr.properties().iterator().next();
+            JsonNode argsNode = call.getValue();
+            if (!argsNode.isArray()) {
+                throw new JPLException("Native arguments must be an array: " + call.getKey());
+            }
+            Object[] args = new Object[argsNode.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = resolve(argsNode.get(i));
+            }
+            return natives.lookup(call.getKey()).invoke(args);
+        }
+        throw new JPLException("Invalid native expression: " + expr);
+    }
+}
@@ -1,15 +1,20 @@
 package com.kapil.jpl.core;
 
 import com.fasterxml.jackson.databind.*;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonLocation;
 import com.kapil.jpl.exceptions.BreakException;
 import com.kapil.jpl.exceptions.ContinueException;
 import com.kapil.jpl.exceptions.JPLException;
 import com.kapil.jpl.exceptions.ReturnException;
+import com.kapil.jpl.lib.JPLOperator;
+import com.kapil.jpl.utils.LoopBounds;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * JPLInterpreter is responsible for executing JPL (JSON Programming Language) scripts.
@@ -17,15 +22,167 @@ import java.util.*;
  * Supports comment removal, error reporting, and context management for script execution.
  */
 public class JPLInterpreter {
+    private static final int MAX_STACK_FRAMES = 20;
+    /** Calls plus loop iterations after which a function is compiled. */
+    public static final int DEFAULT_COMPILE_THRESHOLD = 1000;
+    /** How often a function may fall back from compiled code before it stays interpreted. */
+    private static final int MAX_DEOPTS = 4;
     private final File standardLibDir;
 
 
     private File currentFile;
 
-    private final JPLContext context = new JPLContext();
+    private final JPLContext context;
+    private final ExecutionBudget budget;
+    private int executeDepth;
+    private ModuleCache modules;
+    /** Modules read ahead for the program being executed, when no cache is set. */
+    private ModuleCache preloaded;
+    private ExecutionTracer tracer;
+    private int compileThreshold = DEFAULT_COMPILE_THRESHOLD;
+    private JPLContext.FunctionDef currentFunction;
+    private final Map<String, SourceMap> sourceMaps = new HashMap<>();
+    /** Standard libraries imported so far, to locate errors in their code. */
+    private final List<LibraryIndex> libraries = new ArrayList<>();
+    private final List<String> callNames = new ArrayList<>();
+    private final List<JsonNode> callSites = new ArrayList<>();
+    private final JPLOperator callOperator;
+    private StackEvaluator stackEvaluator;
 
     public JPLInterpreter() {
-        this.standardLibDir = new File("lib"); // or wherever your lib folder is
+        this(new File(System.getProperty("jpl.lib", "lib")), new JPLContext());
+    }
+
+    private JPLInterpreter(File standardLibDir, JPLContext context) {
+        this.standardLibDir = standardLibDir;
+        this.context = context;
+        this.budget = context.getBudget();
+        // Function calls are interpreter-level, so they are registered on this interpreter's own context
+        callOperator = (ctx, callNode) -> {
+            try {
+                return evalFunctionCall(callNode);
+            } catch (IOException e) {
+                throw new JPLException("Function call failed: " + e.getMessage());
+            }
+        };
+        context.getResolver().register("call", callOperator);
+    }
+
+    /**
+     * Creates an interpreter for one branch of a parallel block, evaluating in a copy of this
+     * interpreter's context (see {@link JPLContext#JPLContext(JPLContext)}) with the same settings.
+     * The tracer is not carried over, since it is not thread-safe. Called on this interpreter's thread.
+     *
+     * @return The new interpreter.
+     */
+    JPLInterpreter fork() {
+        JPLInterpreter fork = new JPLInterpreter(standardLibDir, new JPLContext(context));
+        fork.currentFile = currentFile;
+        fork.modules = modules;
+        fork.compileThreshold = compileThreshold;
+        fork.sourceMaps.putAll(sourceMaps);
+        fork.libraries.addAll(libraries);
+        fork.callNames.addAll(callNames);
+        fork.callSites.addAll(callSites);
+        fork.setExplicitStack(isExplicitStack());
+        return fork;
+    }
+
+    /**
+     * Returns the context this interpreter evaluates in.
+     * Use it to inspect variables or to register operators and natives from Java.
+     *
+     * @return The interpreter's context.
+     */
+    public JPLContext getContext() {
+        return context;
+    }
+
+    /**
+     * Makes this interpreter load programs and imports through a cache of parsed files,
+     * so executing a program again only re-parses the files that changed.
+     *
+     * @param modules The cache to use, or null to always load from disk.
+     */
+    public void setModuleCache(ModuleCache modules) {
+        this.modules = modules;
+    }
+
+    /**
+     * @return The cache of parsed files, or null if none is set.
+     */
+    public ModuleCache getModuleCache() {
+        return modules;
+    }
+
+    /**
+     * Records every instruction this interpreter executes into a tracer, which is dumped
+     * to its output when a run fails.
+     *
+     * @param tracer The tracer to record into, or null to stop tracing.
+     */
+    public void setTracer(ExecutionTracer tracer) {
+        this.tracer = tracer;
+        if (tracer != null) sourceMaps.values().forEach(tracer::addSource);
+    }
+
+    /**
+     * @return The active tracer, or null if tracing is off.
+     */
+    public ExecutionTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Sets how hot a function must get before it is compiled to bytecode. Every call and every
+     * loop iteration inside the function counts one. Compilation is skipped while tracing,
+     * since compiled code does not record instructions.
+     *
+     * @param threshold Calls plus loop iterations, or 0 to never compile.
+     */
+    public void setCompileThreshold(int threshold) {
+        this.compileThreshold = Math.max(threshold, 0);
+    }
+
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    /**
+     * Switches between evaluating on the Java stack and on an explicit, heap-allocated stack.
+     * With the explicit stack, how deep JPL functions can recurse is limited by memory and the
+     * execution budget instead of the thread's stack size, at some cost in speed. Functions are
+     * not compiled in this mode, since compiled code recurses on the Java stack.
+     *
+     * @param enabled True to use the explicit stack.
+     */
+    public void setExplicitStack(boolean enabled) {
+        this.stackEvaluator = enabled ? new StackEvaluator(this) : null;
+    }
+
+    public boolean isExplicitStack() {
+        return stackEvaluator != null;
+    }
+
+    /**
+     * Saves the current variables, constants and functions to a binary session snapshot.
+     *
+     * @param file The snapshot file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void saveSession(java.nio.file.Path file) throws IOException {
+        JPLSnapshot.save(context, file);
+    }
+
+    /**
+     * Replaces the current variables, constants and functions with a saved session snapshot.
+     * No source is re-executed.
+     *
+     * @param file The snapshot file to read.
+     * @throws IOException If the file cannot be read.
+     */
+    public void loadSession(java.nio.file.Path file) throws IOException {
+        JPLSnapshot.restore(context, file);
     }
 
     /**
@@ -41,7 +198,7 @@ public class JPLInterpreter {
             throw new JPLException("File not found: " + s);
         }
         try {
-            return new JPLInterpreter().loadCleanJson(file);
+            return JPLLoader.load(file);
         } catch (IOException e) {
             throw new JPLException("Failed to load JPL file: " + s + "\n" + e.getMessage());
         }
@@ -50,42 +207,97 @@ public class JPLInterpreter {
     /**
      * Executes a JPL program from the specified file.
      * Loads, parses, and evaluates the JSON instructions in the file.
+     * A compiled .jplb file is loaded directly, and a .jpl file is loaded from its
+     * .jplb when that is up to date (see {@link JPLLoader}). Before the program runs, the modules
+     * it imports are read and parsed in parallel (see {@link ImportGraph}); they still execute when
+     * their imports are reached.
      *
      * @param file The .jpl file to execute.
      * @throws IOException  If the file cannot be read or parsed.
      * @throws JPLException If the file is invalid or contains errors.
      */
     public void execute(File file) throws IOException {
-        this.currentFile = file;
         if (file == null || !file.exists() || !file.isFile()) {
             throw new JPLException("Invalid file: " + (file != null ? file.getAbsolutePath() : "null"));
         }
         JsonNode root;
         try {
-            root = loadCleanJson(file);
+            ModuleCache cache = modules != null ? modules : preloaded;
+            JPLLoader.Program program = cache != null ? cache.load(file) : JPLLoader.loadProgram(file);
+            addSourceMap(program.positions());
+            root = program.root();
         } catch (JsonProcessingException e) {
             JsonLocation loc = e.getLocation();
             throw new JPLException("JSON parse error at line " + loc.getLineNr() + ", column " + loc.getColumnNr() + ": " + e.getOriginalMessage());
         }
 
-        if (root.isArray()) {
-            int index = 0;
-            for (JsonNode node : root) {
-                try {
-                    eval(node);
-                } catch (Exception e) {
-                    throw new JPLException("Error in instruction at index " + index + ": " + node.toString() + "\nReason: " + e.getMessage());
+        File previousFile = currentFile;
+        try {
+            // Imports run inside the budget of the program that imports them. Counted inside the
+            // try, so a failure here cannot leave the depth raised for the next run
+            if (executeDepth++ == 0) {
+                budget.start();
+                if (modules == null) preloaded = new ModuleCache();
+                ImportGraph.preload(modules != null ? modules : preloaded, standardLibDir, file, root);
+            }
+            this.currentFile = file;
+            if (root.isArray()) {
+                int index = 0;
+                for (JsonNode node : root) {
+                    try {
+                        eval(node);
+                    } catch (JPLException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new JPLException("Error in instruction at index " + index + ": " + e.getMessage())
+                                .withLocation(locationOf(node));
+                    }
+                    index++;
                 }
-                index++;
+            } else {
+                eval(root);
+            }
+        } catch (JPLException e) {
+            if (tracer != null && executeDepth == 1) {
+                tracer.dump(tracer.getOutput());
+            }
+            throw e;
+        } finally {
+            if (--executeDepth == 0) preloaded = null;
+            currentFile = previousFile;
+        }
+    }
+
+    /**
+     * Prepares a program that is run once per input record, e.g. by {@code jpl pipe}.
+     * Its function definitions, constants and imports run now, once; the other top-level
+     * instructions are returned as a block, to be evaluated with {@link #evalBlock} for each record.
+     * The program tree is only read, so one loaded program can be shared by several interpreters.
+     *
+     * @param program The loaded program.
+     * @return The per-record instructions.
+     * @throws IOException If an import cannot be read.
+     */
+    public JsonNode loadTransform(JPLLoader.Program program) throws IOException {
+        addSourceMap(program.positions());
+        currentFile = program.positions().getSource();
+        budget.start();
+        JsonNode root = program.root();
+        ArrayNode perRecord = JsonNodeFactory.instance.arrayNode();
+        for (JsonNode node : root.isArray() ? root : List.of(root)) {
+            if (node.has("def") || node.has("const") || node.has("import") || node.has("laao") || node.has("bring")) {
+                eval(node);
+            } else {
+                perRecord.add(node);
             }
-        } else {
-            eval(root);
         }
+        return perRecord;
     }
 
     /**
      * Evaluates a single JPL instruction node.
      * Handles let, import, if, print, and comment/ignore instructions.
+     * An array is a list literal and evaluates to a list; see {@link #evalBlock} for statement blocks.
      *
      * @param node The JSON node representing the instruction.
      * @return The result of the instruction, or null for statements.
@@ -93,13 +305,53 @@ public class JPLInterpreter {
      * @throws JPLException If the instruction is unknown or invalid.
      */
     public Object eval(JsonNode node) throws IOException {
+        return stackEvaluator != null ? stackEvaluator.run(node) : evalRecursive(node);
+    }
+
+    /**
+     * Evaluates a block of statements, where one is expected: the branches of 'if' and 'switch', a
+     * 'parallel' branch or a per-record transform. An array runs statement by statement; anything
+     * else is a single statement.
+     *
+     * @param block The statements.
+     * @return The value of the last statement, or null for an empty block.
+     * @throws IOException If an imported file cannot be read.
+     */
+    public Object evalBlock(JsonNode block) throws IOException {
+        if (block == null || !block.isArray()) return eval(block);
+        Object lastValue = null;
+        for (JsonNode stmt : block) {
+            lastValue = eval(stmt);
+        }
+        return lastValue;
+    }
+
+    /**
+     * Evaluates a node on the Java stack; {@link StackEvaluator} hands back nodes that cannot call functions.
+     */
+    Object evalRecursive(JsonNode node) throws IOException {
         if (node == null || node.isNull()) return null;
+        budget.tick();
 
 
         if (node.isTextual()) return context.resolve(node);
         if (node.isNumber()) return node.numberValue();
         if (node.isBoolean()) return node.booleanValue();
+        if (node.isArray()) return context.resolve(node); // a list literal
+
+        long traced = tracer != null ? tracer.record(currentFile, node) : -1;
+        try {
+            return evalInstruction(node, traced);
+        } catch (ReturnException | BreakException | ContinueException e) {
+            throw e;
+        } catch (JPLException e) {
+            throw e.hasLocation() ? e : e.withLocation(locationOf(node));
+        } catch (RuntimeException e) {
+            throw new JPLException(String.valueOf(e.getMessage())).withLocation(locationOf(node));
+        }
+    }
 
+    Object evalInstruction(JsonNode node, long traced) throws IOException {
         if (node.has("def")) return evalFunctionDefinition(node.get("def"));
         if (node.has("call")) return evalFunctionCall(node.get("call"));
         if (node.has("return")) {
@@ -113,9 +365,19 @@ public class JPLInterpreter {
             return evalFunctionCall(node.get("call"));
         }
         if (node.has("let")) {
-            return context.handleLet(node.get("let"));
+            context.handleLet(node.get("let"));
+            if (traced >= 0) traceWrite(traced, node.get("let"));
+            return null;
         } else if (node.has("const")) {
-            return context.handleConst(node.get("const"));
+            context.handleConst(node.get("const"));
+            if (traced >= 0) traceWrite(traced, node.get("const"));
+            return null;
+        } else if (node.has("shared")) {
+            context.handleShared(node.get("shared"));
+            if (traced >= 0) traceWrite(traced, node.get("shared"));
+            return null;
+        } else if (node.has("parallel")) {
+            return ParallelBlock.run(this, node.get("parallel"));
 
             //import
 
@@ -124,28 +386,28 @@ public class JPLInterpreter {
                     : node.has("laao") ? node.get("laao").asText()
                     : node.get("bring").asText();
 
-            File importedFile;
-
             // 1. Try relative to current file's directory
-            if (currentFile != null && currentFile.getParentFile() != null) {
-                importedFile = new File(currentFile.getParentFile(), path);
-                if (!importedFile.exists()) {
-                    // 2. fallback to standard lib directory
-                    importedFile = new File(standardLibDir, path);
+            if (currentFile != null && currentFile.getAbsoluteFile().getParentFile() != null) {
+                File importedFile = new File(currentFile.getAbsoluteFile().getParentFile(), path);
+                if (importedFile.exists()) {
+                    execute(importedFile);
+                    return null;
                 }
-            } else {
-                // no current file context, check standard lib only
-                importedFile = new File(standardLibDir, path);
             }
 
-            if (!importedFile.exists()) {
-                throw new JPLException("Import failed: file not found → " + importedFile.getAbsolutePath());
+            // 2. fallback to the standard library, on disk or packaged on the classpath
+            LibraryIndex library = LibraryIndex.find(standardLibDir, path);
+            if (library == null) {
+                throw new JPLException("Import failed: file not found → " + new File(standardLibDir, path).getAbsolutePath());
             }
-
-            execute(importedFile);
+            importLibrary(library);
             return null;
         } else if (node.has("if")) {
             return handleIf(node);
+        } else if (node.has("switch")) {
+            JsonNode switchNode = node.get("switch");
+            JsonNode branch = switchBranch(switchNode, context.resolve(switchSubject(switchNode)));
+            return branch == null ? null : evalBlock(branch);
         } else if (node.has("comment") ||
                 node.has("ignore") ||
                 node.has("skip") ||
@@ -157,13 +419,6 @@ public class JPLInterpreter {
             return null;
         } else if (node.has("print")) {
             JsonNode printNode = node.get("print");
-            if (node.isArray()) {
-                Object lastValue = null;
-                for (JsonNode element : node) {
-                    lastValue = eval(element);
-                }
-                return lastValue;  // returns result of last evaluated statement
-            }
             Object value;
             if (printNode.has("call")) {
                 // Delegate to main eval() which handles 'call'
@@ -175,7 +430,10 @@ public class JPLInterpreter {
             System.out.println(value);
             return null;
         } else if (node.has("while") && node.has("do")) {
+            JPLContext.FunctionDef owner = currentFunction;
             while ((Boolean) context.resolve(node.get("while"))) {
+                budget.tick();
+                if (owner != null) owner.hotness++;
                 try {
                     for (JsonNode stmt : node.get("do")) {
                         eval(stmt);
@@ -192,6 +450,7 @@ public class JPLInterpreter {
 
         } else if (node.has("do") && node.has("while")) {
             do {
+                budget.tick();
                 try {
                     for (JsonNode stmt : node.get("do")) {
                         eval(stmt);
@@ -213,38 +472,187 @@ public class JPLInterpreter {
             throw new ContinueException();
 
         } else if (node.has("for")) {
-            JsonNode forNode = node.get("for");
+            return evalFor(node.get("for"));
 
-            String varName = forNode.get("var").asText();
-            int from = forNode.get("from").asInt();
-            int to = forNode.get("to").asInt();
-            int step = forNode.has("step") ? forNode.get("step").asInt() : 1;
+        } else {
+            checkExpressionStatement(node);
+            return context.resolve(node);
+        }
+    }
 
-            for (int i = from; i <= to; i += step) {
-                context.getVariables().put(varName, i);
-                try {
-                    for (JsonNode stmt : forNode.get("do")) {
-                        eval(stmt);
-                    }
-                } catch (ContinueException ce) {
-                    // skip to next iteration
-                    continue;
-                } catch (BreakException be) {
-                    // exit loop
+    /**
+     * Checks that a statement which is not an instruction is at least an expression. Errors raised
+     * while evaluating the expression itself are left as they are, with their own location.
+     *
+     * @throws JPLException If no key of the node names an instruction or an operator.
+     */
+    void checkExpressionStatement(JsonNode node) {
+        if (!node.isObject()) return;
+        for (Iterator<String> keys = node.fieldNames(); keys.hasNext(); ) {
+            if (context.getResolver().lookup(keys.next()) != null) return;
+        }
+        List<String> keys = new ArrayList<>();
+        node.fieldNames().forEachRemaining(keys::add);
+        throw new JPLException("Unknown instruction: no instruction or operator named " + String.join(", ", keys));
+    }
+
+
+    /**
+     * Captures where an error happened: the failing instruction and the current JPL call stack.
+     * Only the node references are copied here; positions and text are worked out if the
+     * message is read.
+     */
+    Supplier<String> locationOf(JsonNode node) {
+        File file = currentFile;
+        String[] names = callNames.toArray(new String[0]);
+        JsonNode[] sites = callSites.toArray(new JsonNode[0]);
+        return () -> {
+            StringBuilder out = new StringBuilder();
+            out.append("\n  at ").append(describe(node, file));
+            int shown = 0;
+            for (int i = names.length - 1; i >= 0; i--) {
+                if (++shown > MAX_STACK_FRAMES) {
+                    out.append("\n  ... ").append(i + 1).append(" more calls");
                     break;
                 }
+                out.append("\n  in ").append(names[i]).append(", called at ").append(describe(sites[i], null));
             }
-            return null;
+            return out.toString();
+        };
+    }
 
-        } else {
+    private String describe(JsonNode node, File file) {
+        String where = null;
+        for (SourceMap positions : sourceMaps.values()) {
+            where = positions.locate(node);
+            if (where != null) break;
+        }
+        for (int i = 0; where == null && i < libraries.size(); i++) {
+            where = libraries.get(i).locate(node);
+        }
+        if (where == null) where = file != null ? file.getName() : "<input>";
+        Iterator<String> keys = node.fieldNames();
+        return keys.hasNext() ? where + " (" + keys.next() + ")" : where;
+    }
+
+    private void addSourceMap(SourceMap positions) {
+        sourceMaps.put(positions.getSource().getAbsolutePath(), positions);
+        if (tracer != null) tracer.addSource(positions);
+    }
+
+    void traceWrite(long traced, JsonNode bindings) {
+        Iterator<String> names = bindings.fieldNames();
+        if (names.hasNext()) {
+            tracer.recordWrite(traced, context.getVariables().get(names.next()));
+        }
+    }
+
+    /**
+     * Runs a counted 'for' loop.
+     * The bounds and step may be any expression; they are evaluated once before the loop starts.
+     * The counter is an unboxed long, negative steps count down, and the loop variable is only
+     * written to the context on every iteration when the body can actually read it: when its
+     * text names it, calls a function, or could consume a lazy sequence built earlier.
+     *
+     * @param forNode The JSON node under the 'for' key (var, from, to, optional step, do).
+     * @return Always null.
+     * @throws IOException If the loop body fails to import a file.
+     */
+    private Object evalFor(JsonNode forNode) throws IOException {
+        String varName = forNode.get("var").asText();
+        long from = loopBound(forNode, "from");
+        long to = loopBound(forNode, "to");
+        long step = forNode.has("step") ? loopBound(forNode, "step") : 1;
+        JsonNode body = forNode.get("do");
+
+        long trips = LoopBounds.tripCount(from, to, step);
+
+        boolean materialize = context.hasDeferredCode() || mayReadVariable(body, varName);
+        Map<String, Object> vars = context.getVariables();
+        JPLContext.FunctionDef owner = currentFunction;
+        long i = from;
+        for (long n = 0; Long.compareUnsigned(n, trips) < 0; n++, i += step) {
+            budget.tick();
+            if (owner != null) owner.hotness++;
+            if (materialize) {
+                vars.put(varName, boxCounter(i));
+            }
             try {
-                return context.resolve(node);
-            } catch (Exception e) {
-                throw new JPLException("Unknown instruction: " + node);
+                for (JsonNode stmt : body) {
+                    eval(stmt);
+                }
+            } catch (ContinueException ce) {
+                // skip to next iteration
+            } catch (BreakException be) {
+                // exit loop
+                trips = n + 1;
+                break;
+            }
+        }
+        if (!materialize && trips != 0) {
+            // Leave the variable holding its last value, as if it had been written every iteration
+            vars.put(varName, boxCounter(from + (trips - 1) * step));
+        }
+        return null;
+    }
+
+    long loopBound(JsonNode forNode, String key) {
+        JsonNode boundNode = forNode.get(key);
+        if (boundNode == null) {
+            throw new JPLException("Missing '" + key + "' in for loop");
+        }
+        Object value = context.resolve(boundNode);
+        if (!(value instanceof Number number)) {
+            throw new JPLException("'for' " + key + " must be a number, got: " + value);
+        }
+        return number.longValue();
+    }
+
+    static Object boxCounter(long i) {
+        return i == (int) i ? (Object) (int) i : (Object) i;
+    }
+
+    /**
+     * Conservatively checks whether evaluating a node could read the given variable:
+     * any textual value equal to the name counts, and so does any call or import,
+     * since functions and imported code see the caller's variables.
+     */
+    static boolean mayReadVariable(JsonNode node, String name) {
+        if (node == null) return false;
+        if (node.isTextual()) return node.asText().equals(name);
+        if (node.isObject()) {
+            if (node.has("call") || node.has("import") || node.has("laao") || node.has("bring")) return true;
+            for (JsonNode child : node) {
+                if (mayReadVariable(child, name)) return true;
+            }
+        } else if (node.isArray()) {
+            for (JsonNode child : node) {
+                if (mayReadVariable(child, name)) return true;
             }
         }
+        return false;
     }
 
+    /**
+     * Imports a standard library: its functions are declared lazily and parsed on first call,
+     * and its other top-level statements run now, in order.
+     *
+     * @param library The indexed library.
+     * @throws IOException If a statement fails.
+     */
+    private void importLibrary(LibraryIndex library) throws IOException {
+        // After the file changed, a re-import brings a new index that replaces the old one
+        libraries.removeIf(imported -> imported != library && imported.getName().equals(library.getName()));
+        if (!libraries.contains(library)) libraries.add(library);
+        if (modules != null && library.getFile() != null) modules.addDependency(library.getFile());
+        for (LibraryIndex.Entry entry : library.entries()) {
+            if (entry.function() != null) {
+                context.defineLazyFunction(entry.function(), () -> library.define(entry));
+            } else {
+                eval(library.parse(entry));
+            }
+        }
+    }
 
     /**
      * Handles the 'if' instruction in JPL, evaluating conditionals and executing the appropriate branch.
@@ -282,54 +690,66 @@ public class JPLInterpreter {
             throw new JPLException("\"if\" condition must evaluate to a boolean");
 
         if (Boolean.TRUE.equals(condition)) {
-            return eval(ifNode.get("then"));
+            return evalBlock(ifNode.get("then"));
         } else if (ifNode.has("else")) {
-            return eval(ifNode.get("else"));
+            return evalBlock(ifNode.get("else"));
         }
         return null;
     }
 
 
     /**
-     * Loads a JSON file, removing both line (//) and block (/* ... *&#47;) comments before parsing.
-     * This allows .jpl files to contain comments that are ignored during parsing.
+     * Finds the subject of a 'switch' instruction:
+     * {@code {"switch": {"on": expr, "cases": {"click": [...], "key": [...]}, "default": [...]}}}.
      *
-     * @param file The file to load and clean.
-     * @return The parsed JsonNode from the cleaned file content.
-     * @throws IOException If the file cannot be read or parsed.
+     * @param switchNode The object under the 'switch' key.
+     * @return The expression whose value picks the case.
+     * @throws JPLException If the switch has no subject or its cases are not an object.
      */
-    private JsonNode loadCleanJson(File file) throws IOException {
-        String content = new String(java.nio.file.Files.readAllBytes(file.toPath()));
-
-        // Remove // line comments
-        content = content.replaceAll("(?m)//.*$", "");
-
-        // Remove /* block */ comments
-        content = content.replaceAll("(?s)/\\*.*?\\*/", "");
-
-        ObjectMapper mapper = new ObjectMapper();
-        return mapper.readTree(content);
+    static JsonNode switchSubject(JsonNode switchNode) {
+        if (switchNode == null || !switchNode.isObject() || !switchNode.has("on"))
+            throw new JPLException("Missing 'on' in switch statement");
+        JsonNode cases = switchNode.get("cases");
+        if (cases != null && !cases.isObject())
+            throw new JPLException("'cases' of a switch must be an object of case value to statements");
+        return switchNode.get("on");
     }
 
+    /**
+     * Picks the branch of a 'switch' for its evaluated subject. The cases object is itself a hash
+     * table from case text to statements, so this is one lookup however many cases there are,
+     * where a chain of 'if's compares the subject against each case in turn.
+     *
+     * @param switchNode The object under the 'switch' key.
+     * @param subject    The value of its 'on' expression.
+     * @return The matching case's statements, else the 'default' ones, else null.
+     */
+    static JsonNode switchBranch(JsonNode switchNode, Object subject) {
+        JsonNode cases = switchNode.get("cases");
+        String key = caseKey(subject);
+        JsonNode branch = cases != null && key != null ? cases.get(key) : null;
+        return branch != null ? branch : switchNode.get("default");
+    }
 
-    // fun support
-
-
-    // Container for a function
-    private static class FunctionDef {
-        List<String> params;
-        JsonNode body;
-
-        FunctionDef(List<String> params, JsonNode body) {
-            this.params = params;
-            this.body = body;
+    /**
+     * Case labels are JSON field names, so a subject matches the case spelled as its JSON text:
+     * {@code 2} and {@code 2.0} match {@code "2"}, {@code true} matches {@code "true"}.
+     * Lists, maps and other objects match no case.
+     */
+    private static String caseKey(Object subject) {
+        subject = JPLString.flatten(subject);
+        if (subject == null) return "null";
+        if (subject instanceof String text) return text;
+        if (subject instanceof Double d && d == Math.rint(d) && Math.abs(d) < 0x1p63) {
+            return Long.toString((long) (double) d);
         }
+        if (subject instanceof Number || subject instanceof Boolean || subject instanceof Character) {
+            return subject.toString();
+        }
+        return null;
     }
 
-    // Store functions here: function name -> definition
-    private final Map<String, FunctionDef> functions = new HashMap<>();
-
-    private Object evalFunctionDefinition(JsonNode defNode) {
+    Object evalFunctionDefinition(JsonNode defNode) {
         Iterator<String> names = defNode.fieldNames();
         while (names.hasNext()) {
             String fnName = names.next();
@@ -339,12 +759,12 @@ public class JPLInterpreter {
                 params.add(p.asText());
             }
             JsonNode body = fnNode.get("body");
-            functions.put(fnName, new FunctionDef(params, body));
+            context.defineFunction(fnName, params, body);
         }
         return null;
     }
 
-    private Object evalFunctionCall(JsonNode callNode) throws IOException {
+    Object evalFunctionCall(JsonNode callNode) throws IOException {
         Iterator<String> names = callNode.fieldNames();
         if (!names.hasNext()) {
             throw new JPLException("Function call missing function name");
@@ -352,31 +772,68 @@ public class JPLInterpreter {
 
         String fnName = names.next();
 
-        FunctionDef fn = functions.get(fnName);
-        if (fn == null) {
-            throw new JPLException("Function not defined: " + fnName);
-        }
-
         JsonNode argsNode = callNode.get(fnName);
         if (!argsNode.isArray()) {
             throw new JPLException("Function call arguments must be an array");
         }
 
+        JPLContext.FunctionDef fn = context.findFunction(fnName);
+        if (fn == null) {
+            if (context.getNatives().isRegistered(fnName)) {
+                Object[] args = new Object[argsNode.size()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = eval(argsNode.get(i));
+                }
+                return context.getNatives().lookup(fnName).invoke(args);
+            }
+            throw new JPLException("Function not defined: " + fnName);
+        }
+
         if (argsNode.size() != fn.params.size()) {
             throw new JPLException("Function " + fnName + " expects " + fn.params.size() +
                     " arguments, got " + argsNode.size());
         }
 
+        if (tracer == null && stackEvaluator == null && fn.compiled == null && !fn.notCompilable && compileThreshold > 0
+                && ++fn.hotness >= compileThreshold) {
+            tierUp(fnName, fn);
+        }
+        if (fn.compiled != null && tracer == null && stackEvaluator == null && independentArguments(argsNode, fn.params)) {
+            Object[] args = new Object[argsNode.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = eval(argsNode.get(i));
+            }
+            Object result = invokeCompiled(fnName, fn, callNode, args);
+            if (result != CompiledFunction.DEOPT) {
+                return result;
+            }
+            return invokeInterpreted(fnName, fn, callNode, argsNode, args);
+        }
+        return invokeInterpreted(fnName, fn, callNode, argsNode, null);
+    }
+
+    /**
+     * Runs a call by interpreting the function's body.
+     *
+     * @param args The arguments if already evaluated, or null to evaluate them here.
+     */
+    private Object invokeInterpreted(String fnName, JPLContext.FunctionDef fn, JsonNode callNode,
+                                     JsonNode argsNode, Object[] args) throws IOException {
         // Save current vars
         Map<String, Object> oldVars = new HashMap<>(context.getVariables());
 
         // Bind parameters with evaluated arguments
         for (int i = 0; i < fn.params.size(); i++) {
-            Object argVal = eval(argsNode.get(i)); // ✅ Now supports expressions
+            Object argVal = args != null ? args[i] : eval(argsNode.get(i)); // ✅ Now supports expressions
             context.getVariables().put(fn.params.get(i), argVal);
+            if (!(argVal instanceof Number)) fn.nonNumericArgs = true;
         }
 
         Object retVal = null;
+        budget.enterCall();
+        pushCall(fnName, callNode);
+        JPLContext.FunctionDef caller = currentFunction;
+        currentFunction = fn;
         try {
             for (JsonNode stmt : fn.body) {
                 retVal = eval(stmt); // ✅ Will throw ReturnException if needed
@@ -386,28 +843,101 @@ public class JPLInterpreter {
         } finally {
             context.getVariables().clear();
             context.getVariables().putAll(oldVars);
+            budget.exitCall();
+            popCall();
+            currentFunction = caller;
         }
 
-        switch (fnName) {
-            case "java_time_now":
-                return java.time.LocalDateTime.now().toString();
-            case "java_os_name":
-                return System.getProperty("os.name");
-            case "java_user_name":
-                return System.getProperty("user.name");
-            case "java_env":
-                if (callNode.size() == 1) {
-                    String key = callNode.get(0).asText();
-                    return System.getenv(key);
-                } else {
-                    throw new JPLException("java_env expects 1 argument");
-                }
-            case null, default:
-                // No special handling for other functions
-                break;
+        return retVal;
+    }
+
+    /**
+     * Runs a call through the function's compiled code.
+     *
+     * @return The result, or {@link CompiledFunction#DEOPT} if the caller must interpret the call instead.
+     */
+    private Object invokeCompiled(String fnName, JPLContext.FunctionDef fn, JsonNode callNode, Object[] args) {
+        CompiledFunction compiled = fn.compiled;
+        if (compiled.constantCount != context.getConstants().size()) {
+            // A new constant may be a name the function assigns; check again when it is next hot
+            fn.compiled = null;
+            fn.hotness = 0;
+            return CompiledFunction.DEOPT;
+        }
+        budget.enterCall();
+        pushCall(fnName, callNode);
+        try {
+            Object result = compiled.invoke(args);
+            if (result == CompiledFunction.DEOPT) {
+                deoptimize(fn);
+            }
+            return result;
+        } finally {
+            budget.exitCall();
+            popCall();
         }
+    }
 
-        return retVal;
+    /** Records a JPL call for error locations. */
+    void pushCall(String fnName, JsonNode callNode) {
+        callNames.add(fnName);
+        callSites.add(callNode);
+    }
+
+    void popCall() {
+        callNames.remove(callNames.size() - 1);
+        callSites.remove(callSites.size() - 1);
+    }
+
+    JPLOperator getCallOperator() {
+        return callOperator;
+    }
+
+    JPLContext.FunctionDef getCurrentFunction() {
+        return currentFunction;
+    }
+
+    void setCurrentFunction(JPLContext.FunctionDef fn) {
+        currentFunction = fn;
+    }
+
+    File getCurrentFile() {
+        return currentFile;
+    }
+
+    private void tierUp(String fnName, JPLContext.FunctionDef fn) {
+        fn.hotness = 0;
+        if (fn.nonNumericArgs) {
+            // Compiled code is specialised for numbers; wait for a window of numeric calls
+            fn.nonNumericArgs = false;
+            return;
+        }
+        fn.compiled = FunctionCompiler.compile(context, fnName, fn);
+        if (fn.compiled == null) {
+            fn.notCompilable = true;
+        }
+    }
+
+    private static void deoptimize(JPLContext.FunctionDef fn) {
+        fn.compiled = null;
+        fn.hotness = 0;
+        fn.nonNumericArgs = true;
+        if (++fn.deopts >= MAX_DEOPTS) {
+            fn.notCompilable = true;
+        }
+    }
+
+    /**
+     * Whether the arguments of a call can all be evaluated before any parameter is bound, i.e. no
+     * argument may read a parameter bound before it.
+     */
+    private static boolean independentArguments(JsonNode argsNode, List<String> params) {
+        for (int i = 1; i < argsNode.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                if (mayReadVariable(argsNode.get(i), params.get(j))) return false;
+            }
+        }
+        return true;
     }
 
 
@@ -0,0 +1,257 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.kapil.jpl.exceptions.JPLException;
+import com.kapil.jpl.utils.BinaryJson;
+import com.kapil.jpl.utils.JsonUtils;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Loads JPL programs, either from .jpl source or from precompiled .jplb files.
+ * <p>
+ * A .jplb file holds the program tree encoded with {@link BinaryJson} (interned symbols, varints),
+ * plus the path, size and modification time of the source it was compiled from and the source offsets
+ * of its objects and arrays (see {@link SourceMap}). When a .jpl file is
+ * loaded and a .jplb next to it matches the source, the binary form is read instead of
+ * re-parsing the text; a stale .jplb is ignored.
+ */
+public final class JPLLoader {
+    public static final String SOURCE_EXTENSION = ".jpl";
+    public static final String BINARY_EXTENSION = ".jplb";
+
+    private static final int MAGIC = 0x4A504C42; // "JPLB"
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private JPLLoader() {
+    }
+
+    /**
+     * A loaded program: its tree and where each of its objects and arrays came from in the source.
+     *
+     * @param root      The program tree.
+     * @param positions Source positions of the tree's nodes.
+     */
+    public record Program(JsonNode root, SourceMap positions) {
+    }
+
+    /**
+     * Loads a program file, preferring an up-to-date .jplb next to a .jpl source.
+     *
+     * @param file A .jpl or .jplb file.
+     * @return The program tree.
+     * @throws IOException If the file cannot be read or parsed.
+     */
+    public static JsonNode load(File file) throws IOException {
+        return loadProgram(file).root();
+    }
+
+    /**
+     * Loads a program file with its source positions, preferring an up-to-date .jplb next to a .jpl source.
+     *
+     * @param file A .jpl or .jplb file.
+     * @return The program.
+     * @throws IOException If the file cannot be read or parsed.
+     */
+    public static Program loadProgram(File file) throws IOException {
+        if (isBinary(file)) {
+            return readBinary(file, null);
+        }
+        File binary = binaryFor(file);
+        if (binary.isFile()) {
+            Program compiled = readBinary(binary, file);
+            if (compiled != null) return compiled;
+        }
+        return parseProgram(file);
+    }
+
+    /**
+     * Parses a .jpl source file. Comments are skipped by the tokenizer.
+     *
+     * @param file The source file.
+     * @return The program tree.
+     * @throws IOException If the file cannot be read or is not valid JSON.
+     */
+    public static JsonNode parseSource(File file) throws IOException {
+        return parseProgram(file).root();
+    }
+
+    /**
+     * Parses a .jpl source file, recording the byte offset of every object and array.
+     *
+     * @param file The source file.
+     * @return The program.
+     * @throws IOException If the file cannot be read or is not valid JSON.
+     */
+    public static Program parseProgram(File file) throws IOException {
+        SourceMap positions = new SourceMap(file);
+        try (JsonParser parser = JsonUtils.FACTORY.createParser(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (parser.nextToken() == null) {
+                throw new JPLException("Program file is empty: " + file.getPath());
+            }
+            JsonNode root = readTree(parser, positions);
+            positions.setRoot(root);
+            return new Program(root, positions);
+        }
+    }
+
+    /**
+     * Builds the tree for the value at the parser's current token, the same way ObjectMapper.readTree does,
+     * and records where each container starts.
+     */
+    static JsonNode readTree(JsonParser parser, SourceMap positions) throws IOException {
+        JsonNodeFactory nodes = JsonNodeFactory.instance;
+        switch (parser.currentToken()) {
+            case START_OBJECT: {
+                positions.add(parser.currentTokenLocation().getByteOffset());
+                ObjectNode object = nodes.objectNode();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    if (object.replace(name, readTree(parser, positions)) != null) {
+                        // A duplicate key dropped a subtree, so pre-order indexes no longer line up
+                        positions.invalidate();
+                    }
+                }
+                return object;
+            }
+            case START_ARRAY: {
+                positions.add(parser.currentTokenLocation().getByteOffset());
+                ArrayNode array = nodes.arrayNode();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    array.add(readTree(parser, positions));
+                }
+                return array;
+            }
+            case VALUE_STRING:
+                return nodes.textNode(parser.getText());
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return nodes.numberNode(parser.getIntValue());
+                    case LONG:
+                        return nodes.numberNode(parser.getLongValue());
+                    default:
+                        return nodes.numberNode(parser.getBigIntegerValue());
+                }
+            case VALUE_NUMBER_FLOAT:
+                return nodes.numberNode(parser.getDoubleValue());
+            case VALUE_TRUE:
+                return nodes.booleanNode(true);
+            case VALUE_FALSE:
+                return nodes.booleanNode(false);
+            case VALUE_NULL:
+                return nodes.nullNode();
+            default:
+                throw new JPLException("Unexpected token " + parser.currentToken() + " at " + parser.currentTokenLocation().offsetDescription());
+        }
+    }
+
+    /**
+     * Compiles a .jpl source file to its binary form.
+     *
+     * @param source The .jpl file.
+     * @param target The .jplb file to write, or null for the default name next to the source.
+     * @return The file written.
+     * @throws IOException If the source cannot be parsed or the target cannot be written.
+     */
+    public static File compile(File source, File target) throws IOException {
+        if (target == null) target = binaryFor(source);
+        Program program = parseProgram(source);
+
+        File dir = target.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(target.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                BinaryJson.Writer writer = new BinaryJson.Writer(out);
+                writer.writeSymbol(source.getAbsolutePath());
+                writer.writeNode(program.root());
+                // Offsets of objects and arrays in pre-order, each as the difference from the previous one
+                SourceMap positions = program.positions();
+                writer.writeVarInt(positions.size());
+                long previous = 0;
+                for (int i = 0; i < positions.size(); i++) {
+                    writer.writeVarLong(positions.offsetAt(i) - previous);
+                    previous = positions.offsetAt(i);
+                }
+            }
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        return target;
+    }
+
+    /**
+     * Checks whether a file is a compiled .jplb program.
+     *
+     * @param file The file.
+     * @return true for .jplb files.
+     */
+    public static boolean isBinary(File file) {
+        return file.getName().endsWith(BINARY_EXTENSION);
+    }
+
+    /**
+     * Returns the default .jplb file for a .jpl source (same directory, same base name).
+     *
+     * @param source The .jpl file.
+     * @return The matching .jplb file (which may not exist).
+     */
+    public static File binaryFor(File source) {
+        String name = source.getName();
+        if (name.endsWith(SOURCE_EXTENSION)) {
+            name = name.substring(0, name.length() - SOURCE_EXTENSION.length());
+        }
+        return new File(source.getAbsoluteFile().getParentFile(), name + BINARY_EXTENSION);
+    }
+
+    /**
+     * Reads a .jplb file.
+     *
+     * @param binary The .jplb file.
+     * @param source The source it must match, or null to skip the staleness check.
+     * @return The program, or null if {@code source} is given and the binary is stale.
+     * @throws IOException If the file cannot be read.
+     */
+    private static Program readBinary(File binary, File source) throws IOException {
+        BinaryJson.Reader in = new BinaryJson.Reader(Files.readAllBytes(binary.toPath()), 0);
+        if (in.readInt() != MAGIC) {
+            if (source != null) return null;
+            throw new JPLException("Not a compiled JPL program: " + binary.getPath());
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            if (source != null) return null;
+            throw new JPLException("Unsupported compiled JPL version " + version + ": " + binary.getPath());
+        }
+        long sourceLength = in.readLong();
+        long sourceModified = in.readLong();
+        if (source != null && (source.length() != sourceLength || source.lastModified() != sourceModified)) {
+            return null;
+        }
+        String sourcePath = in.readSymbol();
+        JsonNode root = in.readNode();
+        int[] offsets = new int[in.readVarInt()];
+        long previous = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            previous += in.readVarLong();
+            offsets[i] = (int) previous;
+        }
+        SourceMap positions = new SourceMap(source != null ? source : new File(sourcePath), offsets, offsets.length);
+        positions.setRoot(root);
+        return new Program(root, positions);
+    }
+}
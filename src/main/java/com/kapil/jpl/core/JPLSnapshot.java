@@ -0,0 +1,247 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kapil.jpl.exceptions.JPLException;
+import com.kapil.jpl.utils.BinaryJson;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saves and restores the state of a {@link JPLContext} (variables, constants and function definitions)
+ * as a compact binary snapshot, so a prepared session can be restored without re-running any source.
+ * Function bodies and other JSON values are stored with {@link BinaryJson}. Shared counters and maps
+ * are restored as shared values, and their names as constants, as {@code shared} declares them.
+ */
+public final class JPLSnapshot {
+    private static final int MAGIC = 0x4A504C53; // "JPLS"
+    /** Version 2 added shared counters and maps; version 1 snapshots are still read. */
+    private static final int VERSION = 2;
+
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte LIST = 6;
+    private static final byte JSON = 7;
+    private static final byte BIG_INTEGER = 8;
+    private static final byte BIG_DECIMAL = 9;
+    private static final byte COUNTER = 10;
+    private static final byte SHARED_MAP = 11;
+
+    private JPLSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the context to a file, replacing it atomically.
+     *
+     * @param context The context to save.
+     * @param file    The snapshot file.
+     * @throws IOException  If the file cannot be written.
+     * @throws JPLException If a variable holds a value that cannot be saved.
+     */
+    public static void save(JPLContext context, Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+                save(context, out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the context to a stream.
+     *
+     * @param context The context to save.
+     * @param stream  The destination; it is flushed but not closed.
+     * @throws IOException  If writing fails.
+     * @throws JPLException If a variable holds a value that cannot be saved.
+     */
+    public static void save(JPLContext context, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        BinaryJson.Writer writer = new BinaryJson.Writer(out);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        Map<String, Object> variables = context.getVariables();
+        writer.writeVarInt(variables.size());
+        for (Map.Entry<String, Object> variable : variables.entrySet()) {
+            writer.writeSymbol(variable.getKey());
+            writeValue(writer, out, variable.getKey(), variable.getValue());
+        }
+
+        Set<String> constants = context.getConstants();
+        writer.writeVarInt(constants.size());
+        for (String name : constants) {
+            writer.writeSymbol(name);
+        }
+
+        Map<String, JPLContext.FunctionDef> functions = context.getFunctions();
+        writer.writeVarInt(functions.size());
+        for (Map.Entry<String, JPLContext.FunctionDef> function : functions.entrySet()) {
+            writer.writeSymbol(function.getKey());
+            List<String> params = function.getValue().params;
+            writer.writeVarInt(params.size());
+            for (String param : params) {
+                writer.writeSymbol(param);
+            }
+            writer.writeNode(function.getValue().body);
+        }
+        out.flush();
+    }
+
+    /**
+     * Replaces the state of the context with a snapshot read from a file.
+     *
+     * @param context The context to restore into.
+     * @param file    The snapshot file.
+     * @throws IOException  If the file cannot be read.
+     * @throws JPLException If the file is not a JPL snapshot.
+     */
+    public static void restore(JPLContext context, Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            restore(context, in);
+        }
+    }
+
+    /**
+     * Replaces the state of the context with a snapshot read from a stream.
+     * The context is only modified once the whole snapshot has been read successfully.
+     *
+     * @param context The context to restore into.
+     * @param stream  The source; it is not closed.
+     * @throws IOException  If reading fails.
+     * @throws JPLException If the data is not a JPL snapshot.
+     */
+    public static void restore(JPLContext context, InputStream stream) throws IOException {
+        BinaryJson.Reader reader = new BinaryJson.Reader(stream.readAllBytes(), 0);
+        if (reader.readInt() != MAGIC) {
+            throw new JPLException("Not a JPL snapshot");
+        }
+        int version = reader.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new JPLException("Unsupported JPL snapshot version: " + version);
+        }
+
+        Map<String, Object> variables = new LinkedHashMap<>();
+        for (int i = reader.readVarInt(); i > 0; i--) {
+            String name = reader.readSymbol();
+            variables.put(name, readValue(reader));
+        }
+
+        List<String> constants = new ArrayList<>();
+        for (int i = reader.readVarInt(); i > 0; i--) {
+            constants.add(reader.readSymbol());
+        }
+
+        Map<String, JPLContext.FunctionDef> functions = new LinkedHashMap<>();
+        for (int i = reader.readVarInt(); i > 0; i--) {
+            String name = reader.readSymbol();
+            List<String> params = new ArrayList<>();
+            for (int p = reader.readVarInt(); p > 0; p--) {
+                params.add(reader.readSymbol());
+            }
+            functions.put(name, new JPLContext.FunctionDef(params, reader.readNode()));
+        }
+
+        context.clear();
+        context.getVariables().putAll(variables);
+        context.getConstants().addAll(constants);
+        functions.forEach((name, fn) -> context.defineFunction(name, fn.params, fn.body));
+    }
+
+    private static void writeValue(BinaryJson.Writer writer, DataOutputStream out, String name, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean b) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(b);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(INT);
+            writer.writeVarLong(((Number) value).longValue());
+        } else if (value instanceof Long l) {
+            out.writeByte(LONG);
+            writer.writeVarLong(l);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigInteger big) {
+            out.writeByte(BIG_INTEGER);
+            writer.writeSymbol(big.toString());
+        } else if (value instanceof BigDecimal big) {
+            out.writeByte(BIG_DECIMAL);
+            writer.writeSymbol(big.toString());
+        } else if (value instanceof CharSequence text) {
+            out.writeByte(STRING);
+            writer.writeSymbol(text.toString());
+        } else if (value instanceof List<?> list) {
+            out.writeByte(LIST);
+            writer.writeVarInt(list.size());
+            for (Object element : list) {
+                writeValue(writer, out, name, element);
+            }
+        } else if (value instanceof JsonNode node) {
+            out.writeByte(JSON);
+            writer.writeNode(node);
+        } else if (value instanceof SharedCounter counter) {
+            // Followed by the total, whose type tells an integer counter from a fractional one
+            out.writeByte(COUNTER);
+            writeValue(writer, out, name, counter.get());
+        } else if (value instanceof ConcurrentHashMap<?, ?> map) {
+            out.writeByte(SHARED_MAP);
+            Map<?, ?> entries = new HashMap<>(map);
+            writer.writeVarInt(entries.size());
+            for (Map.Entry<?, ?> entry : entries.entrySet()) {
+                writer.writeSymbol(String.valueOf(entry.getKey()));
+                writeValue(writer, out, name, entry.getValue());
+            }
+        } else {
+            throw new JPLException("Cannot snapshot variable '" + name + "' of type " + value.getClass().getSimpleName());
+        }
+    }
+
+    private static Object readValue(BinaryJson.Reader reader) throws IOException {
+        byte tag = reader.readByte();
+        return switch (tag) {
+            case NULL -> null;
+            case BOOLEAN -> reader.readBoolean();
+            case INT -> (int) reader.readVarLong();
+            case LONG -> reader.readVarLong();
+            case DOUBLE -> reader.readDouble();
+            case BIG_INTEGER -> new BigInteger(reader.readSymbol());
+            case BIG_DECIMAL -> new BigDecimal(reader.readSymbol());
+            case STRING -> reader.readSymbol();
+            case LIST -> {
+                int size = reader.readVarInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(reader));
+                }
+                yield list;
+            }
+            case JSON -> reader.readNode();
+            case COUNTER -> SharedCounter.of((Number) readValue(reader));
+            case SHARED_MAP -> {
+                int size = reader.readVarInt();
+                Map<String, Object> map = new ConcurrentHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(reader.readSymbol(), readValue(reader));
+                }
+                yield map;
+            }
+            default -> throw new JPLException("Corrupt JPL snapshot: unknown value tag " + tag);
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package com.kapil.jpl.core;
+
+/**
+ * JPLString is the string value produced by JPL's {@code add} concatenation.
+ * <p>
+ * Several JPLString values may share one growable buffer, each one owning a prefix of it.
+ * Appending to the value that owns the whole buffer extends it in place (amortized O(1)),
+ * so building a string in a loop with {@code let s = add[s, ...]} is linear instead of quadratic.
+ * Appending to an older, shorter value copies its prefix first, so values stay immutable.
+ * The text is flattened into a {@link String} lazily, the first time it is printed or compared.
+ */
+public final class JPLString implements CharSequence {
+    private final StringBuilder buffer;
+    private final int length;
+    private String flat;
+
+    private JPLString(StringBuilder buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    /**
+     * Creates a new JPLString holding the given text.
+     *
+     * @param text The initial text.
+     * @return A JPLString that can be appended to cheaply.
+     */
+    public static JPLString of(CharSequence text) {
+        StringBuilder sb = new StringBuilder(Math.max(16, text.length() * 2));
+        sb.append(text);
+        return new JPLString(sb, sb.length());
+    }
+
+    /**
+     * Concatenates two JPL values as strings, reusing the left operand's buffer when possible.
+     *
+     * @param left  The left operand.
+     * @param right The right operand.
+     * @return The concatenated value.
+     */
+    public static JPLString concat(Object left, Object right) {
+        JPLString base = left instanceof JPLString js ? js : of(String.valueOf(left));
+        return base.append(right);
+    }
+
+    /**
+     * Returns a new value with the given value's text appended to this one.
+     *
+     * @param value The value to append (flattened with {@link String#valueOf(Object)}).
+     * @return The resulting JPLString.
+     */
+    public JPLString append(Object value) {
+        // Flattened before locking: copying another JPLString inside our lock would take its lock
+        // too, once per character, and two strings appending each other could deadlock
+        String tail = String.valueOf(value);
+        synchronized (buffer) {
+            if (buffer.length() == length) {
+                buffer.append(tail);
+                return new JPLString(buffer, buffer.length());
+            }
+        }
+        // Someone else already extended the shared buffer: copy our prefix
+        StringBuilder copy = new StringBuilder(Math.max(16, (length + tail.length()) * 2));
+        synchronized (buffer) {
+            copy.append(buffer, 0, length);
+        }
+        copy.append(tail);
+        return new JPLString(copy, copy.length());
+    }
+
+    /**
+     * Flattens a value if it is a JPLString, leaving all other values untouched.
+     *
+     * @param value Any JPL value.
+     * @return The flat {@link String} for JPLString values, otherwise the value itself.
+     */
+    public static Object flatten(Object value) {
+        return value instanceof JPLString js ? js.toString() : value;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+        synchronized (buffer) {
+            return buffer.charAt(index);
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String s = flat;
+        if (s == null) {
+            synchronized (buffer) {
+                s = buffer.substring(0, length);
+            }
+            flat = s;
+        }
+        return s;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o instanceof JPLString other && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
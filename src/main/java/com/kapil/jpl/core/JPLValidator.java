@@ -0,0 +1,389 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.kapil.jpl.lib.JPLResolver;
+import com.kapil.jpl.utils.JsonUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks that a .jpl file is valid JSON and a well-formed JPL program in a single streaming pass.
+ * <p>
+ * The file is read token by token and no tree is built, so memory use depends only on how deeply
+ * the program is nested, not on its size. Besides syntax, the validator checks that every statement
+ * and expression object has a known instruction or operator key, and the shapes of
+ * {@code def}, {@code call}, {@code let}/{@code const}/{@code shared}, {@code if}, {@code switch}, {@code for},
+ * {@code parallel} and {@code while}/{@code do}.
+ */
+public final class JPLValidator {
+    private static final int MAX_PROBLEMS = 100;
+
+    /** Keys the interpreter handles itself rather than through the operator registry. */
+    private static final Set<String> INSTRUCTIONS = Set.of(
+            "def", "call", "return", "let", "const", "import", "laao", "bring", "if", "switch",
+            "comment", "ignore", "skip", "noop", "cmt", "ig",
+            "print", "while", "do", "break", "continue", "for", "shared", "parallel");
+
+    /** Operators whose operand is not an expression, e.g. the {@code {"name": [args]}} form of native. */
+    private static final Set<String> RAW_OPERANDS = Set.of("native");
+
+    private final JPLResolver operators;
+    private JsonParser parser;
+    private List<String> problems;
+    private int problemCount;
+
+    /**
+     * @param operators The operators programs may use, e.g. {@code interpreter.getContext().getResolver()}.
+     */
+    public JPLValidator(JPLResolver operators) {
+        this.operators = operators;
+    }
+
+    /**
+     * Validates a .jpl file.
+     *
+     * @param file The file to check.
+     * @return The problems found, each prefixed with its line and column; empty if the program is valid.
+     * @throws IOException If the file cannot be read.
+     */
+    public List<String> validate(File file) throws IOException {
+        problems = new ArrayList<>();
+        problemCount = 0;
+        try (JsonParser p = JsonUtils.FACTORY.createParser(file)) {
+            parser = p;
+            if (parser.nextToken() == null) {
+                problems.add("Program file is empty");
+            } else {
+                statement();
+            }
+        } catch (JsonProcessingException e) {
+            problems.add(at(e.getLocation()) + e.getOriginalMessage());
+        } finally {
+            parser = null;
+        }
+        if (problemCount > MAX_PROBLEMS) {
+            problems.add("... and " + (problemCount - MAX_PROBLEMS) + " more problems");
+        }
+        return problems;
+    }
+
+    private void statement() throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                statement();
+            }
+        } else if (token == JsonToken.START_OBJECT) {
+            statementObject();
+        }
+    }
+
+    private void statementObject() throws IOException {
+        JsonLocation start = parser.currentTokenLocation();
+        boolean known = false;
+        boolean hasWhile = false;
+        boolean hasDo = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            parser.nextToken();
+            if (!INSTRUCTIONS.contains(key)) {
+                if (operators.isRegistered(key)) {
+                    known = true;
+                    operands(key);
+                } else {
+                    parser.skipChildren();
+                }
+                continue;
+            }
+            known = true;
+            switch (key) {
+                case "def" -> def();
+                case "call" -> call();
+                case "return" -> statement();
+                case "print" -> expression();
+                case "let", "const" -> bindings(key);
+                case "shared" -> sharedBindings();
+                case "import", "laao", "bring" -> {
+                    if (!parser.currentToken().isScalarValue() || parser.currentToken() == JsonToken.VALUE_NULL) {
+                        problem("'" + key + "' expects a file path");
+                        parser.skipChildren();
+                    }
+                }
+                case "if" -> ifStatement();
+                case "switch" -> switchStatement();
+                case "for" -> forLoop("for");
+                case "parallel" -> {
+                    if (parser.currentToken() == JsonToken.START_ARRAY) {
+                        statement();
+                    } else {
+                        forLoop("parallel");
+                    }
+                }
+                case "while" -> {
+                    hasWhile = true;
+                    expression();
+                }
+                case "do" -> {
+                    hasDo = true;
+                    block("do");
+                }
+                default -> parser.skipChildren(); // comments, break, continue
+            }
+        }
+        if (!known) {
+            problem(start, "Unknown instruction: no instruction or operator key");
+        } else if (hasWhile != hasDo) {
+            problem(start, hasWhile ? "'while' needs a 'do' block" : "'do' needs a 'while' condition");
+        }
+    }
+
+    private void expression() throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_ARRAY) {
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                expression();
+            }
+        } else if (token == JsonToken.START_OBJECT) {
+            JsonLocation start = parser.currentTokenLocation();
+            parser.nextToken();
+            operatorObject(start);
+        }
+    }
+
+    /**
+     * Checks the fields of an expression object, starting at its first field name (or its end).
+     */
+    private void operatorObject(JsonLocation start) throws IOException {
+        boolean known = false;
+        for (; parser.currentToken() == JsonToken.FIELD_NAME; parser.nextToken()) {
+            String key = parser.currentName();
+            parser.nextToken();
+            if (key.equals("call")) {
+                known = true;
+                call();
+            } else if (operators.isRegistered(key)) {
+                known = true;
+                operands(key);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (!known) {
+            problem(start, "Unknown expression: no operator key");
+        }
+    }
+
+    private void operands(String operator) throws IOException {
+        if (RAW_OPERANDS.contains(operator)) {
+            parser.skipChildren();
+        } else {
+            expression();
+        }
+    }
+
+    /**
+     * {@code {"def": {"name": {"params": ["a", ...], "body": [...]}}}}
+     */
+    private void def() throws IOException {
+        if (!expect(JsonToken.START_OBJECT, "'def' expects an object of function definitions")) return;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (!expect(JsonToken.START_OBJECT, "Function '" + name + "' must be an object with 'params' and 'body'")) {
+                continue;
+            }
+            JsonLocation start = parser.currentTokenLocation();
+            boolean hasParams = false;
+            boolean hasBody = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                parser.nextToken();
+                if (key.equals("params")) {
+                    hasParams = true;
+                    if (!expect(JsonToken.START_ARRAY, "'params' of '" + name + "' must be an array of names")) continue;
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+                            problem("Parameter names of '" + name + "' must be strings");
+                            parser.skipChildren();
+                        }
+                    }
+                } else if (key.equals("body")) {
+                    hasBody = true;
+                    statement();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (!hasParams) problem(start, "Function '" + name + "' is missing 'params'");
+            if (!hasBody) problem(start, "Function '" + name + "' is missing 'body'");
+        }
+    }
+
+    /**
+     * {@code {"call": {"name": [args]}}}
+     */
+    private void call() throws IOException {
+        if (!expect(JsonToken.START_OBJECT, "'call' expects {\"function\": [args]}")) return;
+        JsonLocation start = parser.currentTokenLocation();
+        boolean first = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            if (first) {
+                first = false;
+                if (expect(JsonToken.START_ARRAY, "Arguments of '" + name + "' must be an array")) {
+                    expression();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (first) problem(start, "Function call missing function name");
+    }
+
+    private void bindings(String keyword) throws IOException {
+        if (!expect(JsonToken.START_OBJECT, "'" + keyword + "' expects an object of names and values")) return;
+        JsonLocation start = parser.currentTokenLocation();
+        boolean empty = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            empty = false;
+            parser.nextToken();
+            expression();
+        }
+        if (empty && keyword.equals("let")) problem(start, "Empty 'let' operation");
+    }
+
+    /**
+     * {@code {"shared": {"hits": 0, "seen": {}}}}, where {@code {}} declares an empty map.
+     */
+    private void sharedBindings() throws IOException {
+        if (!expect(JsonToken.START_OBJECT, "'shared' expects an object of names and initial values")) return;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                JsonLocation start = parser.currentTokenLocation();
+                if (parser.nextToken() != JsonToken.END_OBJECT) operatorObject(start);
+            } else {
+                expression();
+            }
+        }
+    }
+
+    /**
+     * {@code {"if": {"cond": expr, "then": ..., "else": ...}}}; the condition may use any key.
+     */
+    private void ifStatement() throws IOException {
+        if (!expect(JsonToken.START_OBJECT, "'if' expects an object with a condition and 'then'")) return;
+        JsonLocation start = parser.currentTokenLocation();
+        boolean hasCondition = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            parser.nextToken();
+            if (key.equals("then") || key.equals("else")) {
+                statement();
+            } else {
+                hasCondition = true;
+                expression();
+            }
+        }
+        if (!hasCondition) problem(start, "Missing condition in if statement");
+    }
+
+    /**
+     * {@code {"switch": {"on": expr, "cases": {"a": [...], "b": [...]}, "default": [...]}}}
+     */
+    private void switchStatement() throws IOException {
+        if (!expect(JsonToken.START_OBJECT, "'switch' expects an object with 'on' and 'cases'")) return;
+        JsonLocation start = parser.currentTokenLocation();
+        boolean hasSubject = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            parser.nextToken();
+            switch (key) {
+                case "on" -> {
+                    hasSubject = true;
+                    expression();
+                }
+                case "cases" -> {
+                    if (expect(JsonToken.START_OBJECT, "'cases' of a switch must be an object of case value to statements")) {
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            parser.nextToken();
+                            statement();
+                        }
+                    }
+                }
+                case "default" -> statement();
+                default -> {
+                    problem("Unknown key '" + key + "' in switch statement");
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (!hasSubject) problem(start, "Missing 'on' in switch statement");
+    }
+
+    /**
+     * {@code {"for": {"var": "i", "from": a, "to": b, "step": s, "do": [...]}}}, and the loop form of
+     * {@code parallel}, which may also have {@code "threads"}.
+     */
+    private void forLoop(String keyword) throws IOException {
+        if (!expect(JsonToken.START_OBJECT, "'" + keyword + "' expects an object with var, from, to and do")) return;
+        JsonLocation start = parser.currentTokenLocation();
+        Set<String> missing = new HashSet<>(List.of("var", "from", "to", "do"));
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            parser.nextToken();
+            missing.remove(key);
+            switch (key) {
+                case "var" -> {
+                    if (parser.currentToken() != JsonToken.VALUE_STRING) {
+                        problem("'var' of a " + keyword + " loop must be a name");
+                        parser.skipChildren();
+                    }
+                }
+                case "from", "to", "step", "threads" -> expression();
+                case "do" -> block("do");
+                default -> parser.skipChildren();
+            }
+        }
+        for (String key : List.of("var", "from", "to", "do")) {
+            if (missing.contains(key)) problem(start, "Missing '" + key + "' in " + keyword + " loop");
+        }
+    }
+
+    private void block(String keyword) throws IOException {
+        if (expect(JsonToken.START_ARRAY, "'" + keyword + "' expects an array of statements")) {
+            statement();
+        }
+    }
+
+    private boolean expect(JsonToken token, String message) throws IOException {
+        if (parser.currentToken() == token) return true;
+        problem(message);
+        parser.skipChildren();
+        return false;
+    }
+
+    private void problem(String message) {
+        problem(parser.currentTokenLocation(), message);
+    }
+
+    private void problem(JsonLocation location, String message) {
+        if (++problemCount <= MAX_PROBLEMS) {
+            problems.add(at(location) + message);
+        }
+    }
+
+    private static String at(JsonLocation location) {
+        if (location == null) return "";
+        return "line " + location.getLineNr() + ", column " + location.getColumnNr() + ": ";
+    }
+}
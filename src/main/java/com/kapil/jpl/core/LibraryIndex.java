@@ -0,0 +1,205 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kapil.jpl.exceptions.JPLException;
+import com.kapil.jpl.utils.JsonUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of a standard library file: where each top-level function definition and statement is.
+ * <p>
+ * The index is built with one streaming pass over the file, without building a tree. Importing the
+ * library then only registers a stub per function; a function's definition is parsed from its byte
+ * range the first time it is called. Top-level statements that are not definitions are kept in order
+ * and run at import time, as before.
+ * <p>
+ * Libraries are looked up in the standard library directory first and then on the classpath under
+ * {@code /lib}, so the packaged stdlib works from any working directory. Indexes are cached for the
+ * life of the JVM and shared by every interpreter; one for a file on disk is replaced when the file
+ * changes. Parsed entries are kept with their source positions, so errors in library code report
+ * the library's line and column.
+ */
+final class LibraryIndex {
+    private static final String RESOURCE_DIR = "lib/";
+    private static final Map<String, LibraryIndex> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * A top-level entry: a function definition (name set) or a statement to run at import (name null).
+     */
+    record Entry(String function, int start, int end) {
+    }
+
+    private final String name;
+    private final File file;
+    private final long length;
+    private final long lastModified;
+    private final byte[] source;
+    private final List<Entry> entries;
+    private final Map<Entry, JPLLoader.Program> parsed = new ConcurrentHashMap<>();
+
+    private LibraryIndex(String name, File file, byte[] source) throws IOException {
+        this.name = name;
+        this.file = file;
+        this.length = file != null ? file.length() : 0;
+        this.lastModified = file != null ? file.lastModified() : 0;
+        this.source = source;
+        this.entries = scan(source);
+    }
+
+    /**
+     * Finds and indexes a standard library file.
+     *
+     * @param dir  The standard library directory, checked before the classpath.
+     * @param path The library path as written in the import, e.g. "system.jpl".
+     * @return The index, or null if no such library exists.
+     * @throws IOException If the library cannot be read or is not valid JSON.
+     */
+    static LibraryIndex find(File dir, String path) throws IOException {
+        File file = new File(dir, path);
+        if (file.isFile()) {
+            String key = file.getAbsolutePath();
+            LibraryIndex cached = CACHE.get(key);
+            if (cached == null || cached.length != file.length() || cached.lastModified != file.lastModified()) {
+                cached = new LibraryIndex(file.getPath(), file, Files.readAllBytes(file.toPath()));
+                CACHE.put(key, cached);
+            }
+            return cached;
+        }
+        String resource = RESOURCE_DIR + path;
+        LibraryIndex cached = CACHE.get(resource);
+        if (cached != null) return cached;
+        try (InputStream in = LibraryIndex.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) return null;
+            cached = new LibraryIndex(resource, null, in.readAllBytes());
+        }
+        CACHE.put(resource, cached);
+        return cached;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * @return The library file on disk, or null for a library on the classpath.
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Parses one entry: a statement, or the {@code {"params": [...], "body": [...]}} object of a function.
+     * An entry is parsed once; trees are never modified, so every importer shares it.
+     *
+     * @param entry An entry of this index.
+     * @return The parsed node.
+     */
+    JsonNode parse(Entry entry) {
+        return parsed.computeIfAbsent(entry, this::parseEntry).root();
+    }
+
+    private JPLLoader.Program parseEntry(Entry entry) {
+        SourceMap positions = new SourceMap(new File(name), source, entry.start());
+        try (JsonParser parser = JsonUtils.FACTORY.createParser(source, entry.start(), entry.end() - entry.start())) {
+            parser.nextToken();
+            JsonNode root = JPLLoader.readTree(parser, positions);
+            positions.setRoot(root);
+            return new JPLLoader.Program(root, positions);
+        } catch (IOException e) {
+            throw new JPLException("Failed to load " + (entry.function() != null ? "function '" + entry.function() + "'" : "statement")
+                    + " from " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Describes where a node of this library is, e.g. {@code math.jpl:12:5}.
+     *
+     * @param node Any node.
+     * @return The location, or null if the node is not from a parsed entry of this library.
+     */
+    String locate(JsonNode node) {
+        for (JPLLoader.Program program : parsed.values()) {
+            String where = program.positions().locate(node);
+            if (where != null) return where;
+        }
+        return null;
+    }
+
+    /**
+     * Parses a function entry into a definition.
+     *
+     * @param entry A function entry of this index.
+     * @return The function definition.
+     */
+    JPLContext.FunctionDef define(Entry entry) {
+        JsonNode fn = parse(entry);
+        JsonNode paramsNode = fn.get("params");
+        if (paramsNode == null || !paramsNode.isArray()) {
+            throw new JPLException("Function '" + entry.function() + "' in " + name + " has no 'params' array");
+        }
+        List<String> params = new ArrayList<>(paramsNode.size());
+        for (JsonNode p : paramsNode) {
+            params.add(p.asText());
+        }
+        return new JPLContext.FunctionDef(params, fn.get("body"));
+    }
+
+    private static List<Entry> scan(byte[] source) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (JsonParser parser = JsonUtils.FACTORY.createParser(source)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) return entries;
+            if (token != JsonToken.START_ARRAY) {
+                // A single statement: run it whole at import
+                parser.skipChildren();
+                entries.add(new Entry(null, 0, source.length));
+                return entries;
+            }
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                int start = (int) parser.currentTokenLocation().getByteOffset();
+                if (token == JsonToken.START_OBJECT) {
+                    List<Entry> functions = null;
+                    boolean onlyDef = true;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String key = parser.currentName();
+                        if (parser.nextToken() == JsonToken.START_OBJECT && key.equals("def") && functions == null) {
+                            functions = new ArrayList<>();
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String function = parser.currentName();
+                                parser.nextToken();
+                                int fnStart = (int) parser.currentTokenLocation().getByteOffset();
+                                parser.skipChildren();
+                                functions.add(new Entry(function, fnStart, (int) parser.currentLocation().getByteOffset()));
+                            }
+                        } else {
+                            onlyDef = false;
+                            parser.skipChildren();
+                        }
+                    }
+                    if (functions != null && onlyDef) {
+                        entries.addAll(functions);
+                        continue;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+                entries.add(new Entry(null, start, (int) parser.currentLocation().getByteOffset()));
+            }
+        }
+        return entries;
+    }
+}
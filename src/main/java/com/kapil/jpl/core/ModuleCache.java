@@ -0,0 +1,83 @@
+package com.kapil.jpl.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the parsed form of every program and module an interpreter has loaded, so running the
+ * same program again only re-parses files that changed on disk.
+ * <p>
+ * A cached tree is reused while the file's length and modification time are unchanged.
+ * Parsed trees are never modified by the interpreter, so they can be shared between runs.
+ */
+public final class ModuleCache {
+    private final Map<Path, Module> modules = new ConcurrentHashMap<>();
+    private final Set<Path> dependencies = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger parses = new AtomicInteger();
+
+    private record Module(long length, long lastModified, JPLLoader.Program program) {
+    }
+
+    /**
+     * Returns the program for a file, parsing it only if it is new or has changed.
+     *
+     * @param file A .jpl or .jplb file.
+     * @return The program.
+     * @throws IOException If the file cannot be read or parsed.
+     */
+    public JPLLoader.Program load(File file) throws IOException {
+        Path key = file.toPath().toAbsolutePath().normalize();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Module cached = modules.get(key);
+        if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+            return cached.program;
+        }
+        JPLLoader.Program program = JPLLoader.loadProgram(file);
+        modules.put(key, new Module(length, lastModified, program));
+        parses.incrementAndGet();
+        return program;
+    }
+
+    /**
+     * Records a file that the loaded programs depend on but that is not loaded through this cache,
+     * such as a standard library, so it is listed by {@link #files()}.
+     *
+     * @param file The file.
+     */
+    public void addDependency(File file) {
+        dependencies.add(file.toPath().toAbsolutePath().normalize());
+    }
+
+    /**
+     * @return The absolute paths of every file loaded through this cache or added as a dependency.
+     */
+    public Set<Path> files() {
+        if (dependencies.isEmpty()) return Collections.unmodifiableSet(modules.keySet());
+        Set<Path> files = new HashSet<>(modules.keySet());
+        files.addAll(dependencies);
+        return Collections.unmodifiableSet(files);
+    }
+
+    /**
+     * @return How many files have been parsed (rather than served from the cache) so far.
+     */
+    public int getParseCount() {
+        return parses.get();
+    }
+
+    /**
+     * Drops every cached tree.
+     */
+    public void clear() {
+        modules.clear();
+        dependencies.clear();
+    }
+}
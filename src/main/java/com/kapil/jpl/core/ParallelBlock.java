@@ -0,0 +1,156 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.kapil.jpl.exceptions.BreakException;
+import com.kapil.jpl.exceptions.ContinueException;
+import com.kapil.jpl.exceptions.JPLException;
+import com.kapil.jpl.exceptions.JPLLimitException;
+import com.kapil.jpl.exceptions.ReturnException;
+import com.kapil.jpl.utils.LoopBounds;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a 'parallel' block, in one of two forms:
+ * <ul>
+ *   <li>{@code {"parallel": [[...], [...]]}} – each block on its own thread</li>
+ *   <li>{@code {"parallel": {"var": "i", "from": a, "to": b, "step": s, "threads": n, "do": [...]}}} – a
+ *       'for' loop whose iterations are split into n contiguous ranges, one per thread; n defaults to
+ *       the number of processors and is at most 256</li>
+ * </ul>
+ * Each thread evaluates in a {@link JPLInterpreter#fork() fork} of the interpreter, starting from a copy
+ * of the variables and functions. Whatever a branch assigns or defines is private to it and dropped
+ * when the block ends; shared counters and maps are the same objects in every branch, so
+ * {@code incr} and {@code cas} on them are how branches combine their results. A {@code break} in
+ * the loop form ends only the range of the thread that reached it.
+ * <p>
+ * The block returns once every branch has finished. If any failed, the error of the first
+ * failing branch, in source order, is thrown. The branches run within the limits of the run that
+ * started them: what they execute and allocate is added up, as if it had run on this thread.
+ */
+final class ParallelBlock {
+    /** Grows as needed, so a branch that runs a parallel block of its own cannot starve its children. */
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "jpl-parallel");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** The most threads the loop form splits into; each one is a real thread of the pool. */
+    private static final int MAX_THREADS = 256;
+
+    private ParallelBlock() {
+    }
+
+    static Object run(JPLInterpreter interpreter, JsonNode spec) throws IOException {
+        List<JsonNode> branches = spec.isArray() ? blocks(spec) : ranges(interpreter, spec);
+        List<JPLInterpreter> forks = new ArrayList<>(branches.size());
+        for (int i = 0; i < branches.size(); i++) forks.add(interpreter.fork());
+
+        List<Future<?>> running = new ArrayList<>(branches.size());
+        for (int i = 0; i < branches.size(); i++) {
+            JPLInterpreter fork = forks.get(i);
+            JsonNode branch = branches.get(i);
+            running.add(POOL.submit(() -> {
+                ExecutionBudget budget = fork.getContext().getBudget();
+                budget.resumeOnThread();
+                try {
+                    runBranch(fork, branch);
+                } finally {
+                    budget.leaveThread();
+                }
+                return null;
+            }));
+        }
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<?> branch : running) {
+            try {
+                branch.get();
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause();
+            } catch (InterruptedException e) {
+                // The rest are cancelled, so waiting for them would only throw CancellationException
+                interrupted = true;
+                running.forEach(f -> f.cancel(true));
+                break;
+            }
+        }
+        // Sequences built in a branch can outlive it in a shared map
+        if (forks.stream().anyMatch(f -> f.getContext().hasDeferredCode())) interpreter.getContext().markDeferredCode();
+        // The branches' instructions and allocations count against this run's limits
+        try {
+            interpreter.getContext().getBudget().join(forks.stream().map(f -> f.getContext().getBudget()).toList());
+        } catch (JPLLimitException e) {
+            if (failure == null) failure = e;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new JPLException("Interrupted while waiting for a parallel block");
+        }
+        if (failure instanceof RuntimeException e) throw e;
+        if (failure instanceof IOException e) throw e;
+        if (failure instanceof Error e) throw e;
+        return null;
+    }
+
+    private static void runBranch(JPLInterpreter fork, JsonNode branch) throws IOException {
+        try {
+            fork.evalBlock(branch);
+        } catch (ReturnException e) {
+            throw new JPLException("'return' cannot leave a parallel block");
+        } catch (BreakException | ContinueException e) {
+            throw new JPLException("'break' and 'continue' cannot leave a parallel block");
+        }
+    }
+
+    private static List<JsonNode> blocks(JsonNode spec) {
+        List<JsonNode> blocks = new ArrayList<>(spec.size());
+        spec.forEach(blocks::add);
+        return blocks;
+    }
+
+    /**
+     * Splits the loop form into one 'for' loop per thread, each over a contiguous share of the iterations.
+     * The bounds are evaluated once, here.
+     */
+    private static List<JsonNode> ranges(JPLInterpreter interpreter, JsonNode spec) {
+        if (!spec.isObject() || !spec.has("var") || !spec.has("do")) {
+            throw new JPLException("'parallel' expects an array of blocks or an object with var, from, to and do");
+        }
+        long from = interpreter.loopBound(spec, "from");
+        long to = interpreter.loopBound(spec, "to");
+        long step = spec.has("step") ? interpreter.loopBound(spec, "step") : 1;
+        long threads = spec.has("threads") ? interpreter.loopBound(spec, "threads") : Runtime.getRuntime().availableProcessors();
+        if (threads < 1) throw new JPLException("'parallel' threads must be at least 1, got: " + threads);
+        threads = Math.min(threads, MAX_THREADS);
+
+        long trips = LoopBounds.tripCount(from, to, step);
+        int count = (int) (Long.compareUnsigned(trips, threads) < 0 ? trips : threads);
+        List<JsonNode> ranges = new ArrayList<>(count);
+        long share = Long.divideUnsigned(trips, count == 0 ? 1 : count);
+        long extra = Long.remainderUnsigned(trips, count == 0 ? 1 : count);
+        long start = from;
+        for (int i = 0; i < count; i++) {
+            long iterations = share + (i < extra ? 1 : 0);
+            ObjectNode loop = JsonNodeFactory.instance.objectNode();
+            loop.set("var", spec.get("var"));
+            loop.put("from", start);
+            loop.put("to", start + (iterations - 1) * step);
+            loop.put("step", step);
+            loop.set("do", spec.get("do"));
+            ranges.add(JsonNodeFactory.instance.objectNode().set("for", loop));
+            start += iterations * step;
+        }
+        return ranges;
+    }
+}
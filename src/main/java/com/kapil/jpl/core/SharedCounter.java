@@ -0,0 +1,96 @@
+package com.kapil.jpl.core;
+
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter declared with {@code {"shared": {"hits": 0}}}, which the branches of a parallel block
+ * add to with {@code incr}. Updates from different threads go to different cells of a
+ * {@link LongAdder} (or a {@link DoubleAdder} for counters that start with a fraction), so
+ * threads counting into the same counter do not wait on each other; reading it sums the cells.
+ * <p>
+ * A counter is a {@link Number}, so it can be used directly in arithmetic and comparisons.
+ */
+public final class SharedCounter extends Number {
+    private final LongAdder longs;
+    private final DoubleAdder doubles;
+
+    private SharedCounter(LongAdder longs, DoubleAdder doubles) {
+        this.longs = longs;
+        this.doubles = doubles;
+    }
+
+    /**
+     * @param initial The starting value. Integers make an integer counter; anything else counts in doubles.
+     * @return A new counter.
+     */
+    public static SharedCounter of(Number initial) {
+        if (isInteger(initial)) {
+            LongAdder longs = new LongAdder();
+            longs.add(initial.longValue());
+            return new SharedCounter(longs, null);
+        }
+        DoubleAdder doubles = new DoubleAdder();
+        doubles.add(initial.doubleValue());
+        return new SharedCounter(null, doubles);
+    }
+
+    /**
+     * Adds to the counter without locking.
+     *
+     * @param delta The amount; integer counters accept whole numbers only.
+     * @throws JPLException If a fraction is added to an integer counter.
+     */
+    public void add(Number delta) {
+        if (doubles != null) {
+            doubles.add(delta.doubleValue());
+        } else if (isInteger(delta)) {
+            longs.add(delta.longValue());
+        } else {
+            double d = delta.doubleValue();
+            if (d != Math.rint(d) || Math.abs(d) >= 0x1p63) {
+                throw new JPLException("Cannot add " + delta + " to an integer counter; start it at 0.0 to count fractions");
+            }
+            longs.add((long) d);
+        }
+    }
+
+    /**
+     * @return The current total: a Long for integer counters, else a Double. Not an atomic snapshot
+     * while other threads are adding.
+     */
+    public Number get() {
+        return longs != null ? (Number) longs.sum() : (Number) doubles.sum();
+    }
+
+    static boolean isInteger(Number n) {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+
+    @Override
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    @Override
+    public long longValue() {
+        return longs != null ? longs.sum() : (long) doubles.sum();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return longs != null ? (double) longs.sum() : doubles.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+}
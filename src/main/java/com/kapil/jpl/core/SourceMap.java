@@ -0,0 +1,166 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Records where each object and array of a program tree starts in its source file.
+ * <p>
+ * The byte offsets of the tree's objects and arrays are kept in an {@code int[]}, in the order
+ * they appear in the source (pre-order), so recording a position while parsing is a single array
+ * store. Nothing else is computed up front: finding a node's index, and its line and column, is
+ * only done when an error message asks for them.
+ */
+public final class SourceMap {
+    private final File source;
+    private final byte[] text;
+    private int base;
+    private JsonNode root;
+    private int[] offsets;
+    private int size;
+    private boolean consistent = true;
+
+    /**
+     * @param source The source file the offsets refer to.
+     */
+    public SourceMap(File source) {
+        this(source, new int[256], 0);
+    }
+
+    /**
+     * @param source  The source file the offsets refer to.
+     * @param offsets Offsets of the tree's objects and arrays in pre-order.
+     * @param size    How many entries of {@code offsets} are used.
+     */
+    public SourceMap(File source, int[] offsets, int size) {
+        this(source, null, offsets, size);
+    }
+
+    /**
+     * For part of a source that is already in memory, such as one definition of a packaged library,
+     * which may not exist as a file.
+     *
+     * @param source The name to report locations under.
+     * @param text   The whole source.
+     * @param base   Where in the text the parsed part starts; recorded offsets are relative to it.
+     */
+    public SourceMap(File source, byte[] text, int base) {
+        this(source, text, new int[16], 0);
+        this.base = base;
+    }
+
+    private SourceMap(File source, byte[] text, int[] offsets, int size) {
+        this.source = source;
+        this.text = text;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    public File getSource() {
+        return source;
+    }
+
+    /**
+     * Records the offset of the next object or array, in pre-order.
+     *
+     * @param offset Byte offset of its opening bracket, or -1 if unknown.
+     */
+    public void add(long offset) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        offset += base;
+        offsets[size++] = offset < base || offset > Integer.MAX_VALUE ? -1 : (int) offset;
+    }
+
+    /**
+     * Sets the tree the offsets belong to, once it is complete.
+     *
+     * @param root The program tree.
+     */
+    public void setRoot(JsonNode root) {
+        this.root = root;
+    }
+
+    /**
+     * Marks the offsets as no longer matching the tree, e.g. because a duplicate key replaced a subtree.
+     */
+    public void invalidate() {
+        consistent = false;
+    }
+
+    /**
+     * @return The number of recorded offsets.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Pre-order index of an object or array.
+     * @return Its byte offset, or -1 if unknown.
+     */
+    public int offsetAt(int index) {
+        return index < size ? offsets[index] : -1;
+    }
+
+    /**
+     * @param node A node of the tree this map was built for.
+     * @return Its byte offset in the source, or -1 if unknown.
+     */
+    public int offsetOf(JsonNode node) {
+        if (!consistent || root == null || node == null || !node.isContainerNode()) return -1;
+        int[] next = {0};
+        int index = indexOf(root, node, next);
+        return index < 0 ? -1 : offsetAt(index);
+    }
+
+    private static int indexOf(JsonNode current, JsonNode target, int[] next) {
+        if (!current.isContainerNode()) return -1;
+        int index = next[0]++;
+        if (current == target) return index;
+        for (JsonNode child : current) {
+            int found = indexOf(child, target, next);
+            if (found >= 0) return found;
+        }
+        return -1;
+    }
+
+    /**
+     * Describes where a node is, e.g. {@code main.jpl:12:5}.
+     *
+     * @param node A node of the tree this map was built for.
+     * @return The location, or null if the node has no recorded position.
+     */
+    public String locate(JsonNode node) {
+        int offset = offsetOf(node);
+        if (offset < 0) return null;
+        byte[] text = this.text;
+        if (text == null) {
+            try {
+                text = Files.readAllBytes(source.toPath());
+            } catch (IOException e) {
+                text = null;
+            }
+        }
+        if (text == null || offset > text.length) {
+            return source.getName() + " (byte " + offset + ")";
+        }
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < offset; i++) {
+            if (text[i] == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        // Columns count characters, not bytes
+        int column = new String(text, lineStart, offset - lineStart, StandardCharsets.UTF_8).length() + 1;
+        return source.getName() + ":" + line + ":" + column;
+    }
+}
@@ -0,0 +1,772 @@
+package com.kapil.jpl.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.kapil.jpl.exceptions.BreakException;
+import com.kapil.jpl.exceptions.ContinueException;
+import com.kapil.jpl.exceptions.JPLException;
+import com.kapil.jpl.exceptions.ReturnException;
+import com.kapil.jpl.lib.JPLOperator;
+import com.kapil.jpl.utils.LoopBounds;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Evaluates JPL on an explicit, heap-allocated stack instead of by Java recursion, so how deeply
+ * JPL functions can recurse is bounded by memory (and {@link ExecutionBudget#maxCallDepth}) rather
+ * than by the thread's stack size.
+ * <p>
+ * Pending work is a stack of tasks and intermediate values sit on an operand stack. A JPL call
+ * pushes a frame marker rather than calling into Java; {@code return}, {@code break} and
+ * {@code continue} unwind the task stack to the call or loop they belong to, and errors unwind it
+ * the same way, adding locations as {@link JPLInterpreter#eval} does. Task and frame objects are
+ * pooled and reused, so a call allocates nothing beyond the copy of the caller's variables that
+ * dynamic scoping needs.
+ * <p>
+ * Only nodes that contain a call are taken apart. Anything else is handed to the recursive
+ * interpreter, where the depth of Java recursion is bounded by how deeply the source is nested.
+ * Operands of the built-in arithmetic, comparison, logic, math, {@code join} and {@code get}
+ * operators are evaluated on the explicit stack; calls made from other operators (natives,
+ * sequence lambdas, operators from providers) still recurse in Java.
+ */
+final class StackEvaluator {
+    private static final int EVAL = 0, EVAL_END = 1, BLOCK = 2, EXPR = 3, LIST = 4,
+            OPERANDS = 5, AND = 6, OR = 7, CALL = 8, CALL_ARGS = 9, CALL_END = 10, NATIVE = 11,
+            RETURN = 12, LET = 13, CONST = 14, IF = 15, PRINT = 16, WHILE = 17, FOR = 18, SWITCH = 19;
+
+    // Loop states
+    private static final int LOOP_START = 0, LOOP_CONDITION = 1, LOOP_BODY = 2, LOOP_DONE = 3;
+
+    private enum Signal {RETURN, BREAK, CONTINUE, ERROR}
+
+    /** Operators whose operands are evaluated here, mapped to how many of them they read (-1: all). */
+    private static final Map<String, Integer> EAGER_OPERATORS = new HashMap<>();
+
+    static {
+        for (String op : List.of("add", "sub", "mul", "div", "mod", "pow", "&", "|", "^|", "<<", ">>", ">>>",
+                "eq", "==", "lt", "<", "lte", "<=", "gt", ">", "gte", ">=")) {
+            EAGER_OPERATORS.put(op, 2);
+        }
+        for (String op : List.of("sqrt", "abs", "neg", "~", "sin", "cos", "tan", "asin", "acos", "atan", "sinh",
+                "cosh", "tanh", "exp", "log", "log10", "cbrt", "floor", "ceil", "round", "length", "upper", "lower", "trim")) {
+            EAGER_OPERATORS.put(op, 0); // operand is not an array
+        }
+        for (String op : List.of("hypot", "atan2", "min", "max", "clamp", "gcd", "modpow", "substring", "index_of",
+                "starts_with", "ends_with", "contains", "replace", "split", "format", "matches", "match",
+                "regex_replace", "regex_split")) {
+            EAGER_OPERATORS.put(op, -1);
+        }
+        EAGER_OPERATORS.put("not", 1);
+        EAGER_OPERATORS.put("!", 1);
+        EAGER_OPERATORS.put("join", -1);
+        EAGER_OPERATORS.put("get", -1);
+    }
+
+    private static final Set<String> COMMENTS = Set.of("comment", "ignore", "skip", "noop", "cmt", "ig");
+    private static final int MAX_POOLED_FRAMES = 256;
+
+    /** A pending piece of work. Which fields are used depends on {@link #op}. */
+    private static final class Task {
+        int op;
+        int state;
+        int index;
+        int sp;
+        JsonNode node;
+        Object aux;
+        String name;
+        JPLOperator operator;
+        JPLContext.FunctionDef owner;
+        long traced;
+        long from, step, trips, n, i;
+        boolean flag;
+    }
+
+    /** A JPL call in progress: what to restore when it returns. */
+    private static final class Frame {
+        final Map<String, Object> saved = new HashMap<>();
+        String name;
+        JPLContext.FunctionDef fn;
+        JPLContext.FunctionDef caller;
+    }
+
+    private final JPLInterpreter interpreter;
+    private final JPLContext context;
+    private final ExecutionBudget budget;
+    private final Map<JsonNode, Boolean> hasCall = new IdentityHashMap<>();
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+
+    private Task[] tasks = new Task[64];
+    private int top;
+    private Object[] values = new Object[64];
+    private int sp;
+    private int base;
+    private int valueBase;
+
+    StackEvaluator(JPLInterpreter interpreter) {
+        this.interpreter = interpreter;
+        this.context = interpreter.getContext();
+        this.budget = context.getBudget();
+    }
+
+    /**
+     * Evaluates a node like {@link JPLInterpreter#eval}. May be re-entered, e.g. from a native
+     * that calls back into JPL.
+     */
+    Object run(JsonNode root) throws IOException {
+        if (!needsStack(root)) {
+            return interpreter.evalRecursive(root);
+        }
+        int outerBase = base;
+        int outerValueBase = valueBase;
+        base = top;
+        valueBase = sp;
+        try {
+            push(EVAL, root);
+            while (top > base) {
+                try {
+                    step(tasks[top - 1]);
+                } catch (ReturnException e) {
+                    unwind(Signal.RETURN, e.getValue(), null);
+                } catch (BreakException e) {
+                    unwind(Signal.BREAK, null, null);
+                } catch (ContinueException e) {
+                    unwind(Signal.CONTINUE, null, null);
+                } catch (Exception | Error e) {
+                    unwind(Signal.ERROR, null, e);
+                }
+            }
+            return popValue();
+        } finally {
+            base = outerBase;
+            valueBase = outerValueBase;
+        }
+    }
+
+    private void step(Task t) throws IOException {
+        switch (t.op) {
+            case EVAL -> eval(t);
+            case EVAL_END -> pop();
+            case BLOCK -> {
+                if (t.index < size(t.node)) {
+                    popValue(); // the previous statement's value
+                    push(EVAL, child(t.node, t.index++));
+                } else {
+                    pop();
+                }
+            }
+            case EXPR -> expression(t);
+            case LIST -> {
+                @SuppressWarnings("unchecked")
+                List<Object> list = (List<Object>) t.aux;
+                if (t.index > 0) list.add(popValue());
+                if (t.index < t.node.size()) {
+                    push(EXPR, t.node.get(t.index++));
+                } else {
+                    complete(list);
+                }
+            }
+            case OPERANDS -> operands(t);
+            case AND, OR -> {
+                // Same evaluation as the interpreter: resolve(a).equals(true) &&/|| resolve(b).equals(true)
+                if (t.index == 0) {
+                    t.index = 1;
+                    push(EXPR, t.node.get(0));
+                } else if (t.index == 1) {
+                    boolean first = popValue().equals(true);
+                    if (first == (t.op == AND)) {
+                        t.index = 2;
+                        push(EXPR, t.node.get(1));
+                    } else {
+                        complete(first);
+                    }
+                } else {
+                    complete(popValue().equals(true));
+                }
+            }
+            case CALL -> call(t);
+            case CALL_ARGS -> callArguments(t);
+            case CALL_END -> {
+                Object result = popValue();
+                endCall((Frame) t.aux);
+                complete(result);
+            }
+            case NATIVE -> {
+                Object[] args = (Object[]) t.aux;
+                if (t.index > 0) args[t.index - 1] = popValue();
+                if (t.index < args.length) {
+                    push(EVAL, t.node.get(t.index++));
+                } else {
+                    complete(context.getNatives().lookup(t.name).invoke(args));
+                }
+            }
+            case RETURN -> unwind(Signal.RETURN, popValue(), null);
+            case LET, CONST -> assign(t);
+            case IF -> {
+                if (t.index == 0) {
+                    t.index = 1;
+                    push(EXPR, condition(t.node));
+                } else {
+                    Object condition = popValue();
+                    if (!(condition instanceof Boolean)) {
+                        throw new JPLException("\"if\" condition must evaluate to a boolean");
+                    }
+                    JsonNode ifNode = t.node.get("if");
+                    if (Boolean.TRUE.equals(condition)) {
+                        block(t, ifNode.get("then"));
+                    } else if (ifNode.has("else")) {
+                        block(t, ifNode.get("else"));
+                    } else {
+                        complete(null);
+                    }
+                }
+            }
+            case SWITCH -> {
+                if (t.index == 0) {
+                    t.index = 1;
+                    push(EXPR, JPLInterpreter.switchSubject(t.node));
+                } else {
+                    JsonNode branch = JPLInterpreter.switchBranch(t.node, popValue());
+                    if (branch != null) {
+                        block(t, branch);
+                    } else {
+                        complete(null);
+                    }
+                }
+            }
+            case PRINT -> {
+                System.out.println(popValue());
+                complete(null);
+            }
+            case WHILE -> whileLoop(t);
+            case FOR -> forLoop(t);
+            default -> throw new IllegalStateException("Unknown task " + t.op);
+        }
+    }
+
+    /**
+     * Mirrors {@link JPLInterpreter#eval}: ticks, then dispatches on the instruction key.
+     */
+    private void eval(Task t) throws IOException {
+        JsonNode node = t.node;
+        if (node == null || node.isNull()) {
+            complete(null);
+            return;
+        }
+        if (!needsStack(node)) {
+            complete(interpreter.evalRecursive(node));
+            return;
+        }
+        budget.tick();
+        if (node.isArray()) {
+            // A list literal, as in the interpreter
+            replace(t, EXPR, node);
+            return;
+        }
+        ExecutionTracer tracer = interpreter.getTracer();
+        t.traced = tracer != null ? tracer.record(interpreter.getCurrentFile(), node) : -1;
+        // From here on errors get this node's location
+        t.op = EVAL_END;
+
+        if (node.has("def")) {
+            pushValue(interpreter.evalFunctionDefinition(node.get("def")));
+        } else if (node.has("call")) {
+            push(CALL, node.get("call"));
+        } else if (node.has("return")) {
+            push(RETURN, node);
+            push(EVAL, node.get("return"));
+        } else if (node.has("let")) {
+            push(LET, node.get("let")).traced = t.traced;
+        } else if (node.has("const")) {
+            push(CONST, node.get("const")).traced = t.traced;
+        } else if (node.has("import") || node.has("laao") || node.has("bring")
+                || node.has("shared") || node.has("parallel")) {
+            pushValue(interpreter.evalInstruction(node, t.traced));
+        } else if (node.has("if")) {
+            push(IF, node);
+        } else if (node.has("switch")) {
+            push(SWITCH, node.get("switch"));
+        } else if (COMMENTS.stream().anyMatch(node::has)) {
+            pushValue(null);
+        } else if (node.has("print")) {
+            JsonNode printNode = node.get("print");
+            push(PRINT, printNode);
+            push(printNode.has("call") ? EVAL : EXPR, printNode);
+        } else if (node.has("while") && node.has("do")) {
+            push(WHILE, node);
+        } else if (node.has("break")) {
+            unwind(Signal.BREAK, null, null);
+        } else if (node.has("continue")) {
+            unwind(Signal.CONTINUE, null, null);
+        } else if (node.has("for")) {
+            push(FOR, node.get("for"));
+        } else {
+            interpreter.checkExpressionStatement(node);
+            push(EXPR, node);
+        }
+    }
+
+    /**
+     * Mirrors {@link JPLContext#resolve}.
+     */
+    private void expression(Task t) {
+        JsonNode node = t.node;
+        if (!needsStack(node)) {
+            complete(context.resolve(node));
+            return;
+        }
+        if (node.isArray()) {
+            t.op = LIST;
+            t.index = 0;
+            t.aux = new ArrayList<>(node.size());
+            return;
+        }
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            JPLOperator operator = context.getResolver().lookup(field.getKey());
+            if (operator == null) continue;
+            String key = field.getKey();
+            JsonNode operands = field.getValue();
+            if (operator == interpreter.getCallOperator()) {
+                replace(t, CALL, operands);
+            } else if ((key.equals("and") || key.equals("&&") || key.equals("or") || key.equals("||"))
+                    && context.isCoreOperator(key)) {
+                replace(t, key.startsWith("a") || key.equals("&&") ? AND : OR, operands);
+            } else if (EAGER_OPERATORS.containsKey(key) && context.isCoreOperator(key)
+                    && (operands.isArray() || EAGER_OPERATORS.get(key) == 0)) {
+                int count = EAGER_OPERATORS.get(key);
+                replace(t, OPERANDS, operands);
+                t.operator = operator;
+                t.index = 0;
+                t.aux = new Object[count == 0 ? 1 : count < 0 ? operands.size() : Math.min(count, operands.size())];
+            } else {
+                complete(operator.apply(context, operands));
+            }
+            return;
+        }
+        throw new JPLException("Unknown expression: " + node);
+    }
+
+    /**
+     * Evaluates the operands an operator reads, then applies it to the values.
+     */
+    private void operands(Task t) {
+        Object[] evaluated = (Object[]) t.aux;
+        if (t.index > 0) evaluated[t.index - 1] = popValue();
+        if (t.index < evaluated.length) {
+            JsonNode operand = t.node.isArray() ? t.node.get(t.index) : t.node;
+            t.index++;
+            push(EXPR, operand);
+            return;
+        }
+        JsonNode resolved;
+        if (t.node.isArray()) {
+            ArrayNode array = JsonNodeFactory.instance.arrayNode(t.node.size());
+            for (int i = 0; i < t.node.size(); i++) {
+                array.add(i < evaluated.length ? JsonNodeFactory.instance.pojoNode(evaluated[i]) : t.node.get(i));
+            }
+            resolved = array;
+        } else {
+            resolved = JsonNodeFactory.instance.pojoNode(evaluated[0]);
+        }
+        complete(t.operator.apply(context, resolved));
+    }
+
+    /**
+     * Mirrors {@link JPLInterpreter#evalFunctionCall}, up to evaluating the arguments.
+     */
+    private void call(Task t) throws IOException {
+        JsonNode callNode = t.node;
+        Iterator<String> names = callNode.fieldNames();
+        if (!names.hasNext()) {
+            throw new JPLException("Function call missing function name");
+        }
+        String fnName = names.next();
+        JsonNode argsNode = callNode.get(fnName);
+        if (!argsNode.isArray()) {
+            throw new JPLException("Function call arguments must be an array");
+        }
+        JPLContext.FunctionDef fn = context.findFunction(fnName);
+        if (fn == null) {
+            if (context.getNatives().isRegistered(fnName)) {
+                replace(t, NATIVE, argsNode);
+                t.name = fnName;
+                t.index = 0;
+                t.aux = new Object[argsNode.size()];
+                return;
+            }
+            throw new JPLException("Function not defined: " + fnName);
+        }
+        if (argsNode.size() != fn.params.size()) {
+            throw new JPLException("Function " + fnName + " expects " + fn.params.size() +
+                    " arguments, got " + argsNode.size());
+        }
+        if (fn.body == null || !fn.body.isArray()) {
+            complete(interpreter.evalFunctionCall(callNode));
+            return;
+        }
+        Frame frame = frames.isEmpty() ? new Frame() : frames.pop();
+        frame.saved.putAll(context.getVariables());
+        frame.name = fnName;
+        frame.fn = fn;
+        t.op = CALL_ARGS;
+        t.index = 0;
+        t.aux = frame;
+        t.name = fnName;
+    }
+
+    private void callArguments(Task t) {
+        Frame frame = (Frame) t.aux;
+        JsonNode argsNode = t.node.get(t.name);
+        if (t.index > 0) {
+            // Bound as soon as it is evaluated, so later arguments see it, as in the interpreter
+            context.getVariables().put(frame.fn.params.get(t.index - 1), popValue());
+        }
+        if (t.index < argsNode.size()) {
+            push(EVAL, argsNode.get(t.index++));
+            return;
+        }
+        budget.enterCall();
+        interpreter.pushCall(frame.name, t.node);
+        frame.caller = interpreter.getCurrentFunction();
+        interpreter.setCurrentFunction(frame.fn);
+        t.op = CALL_END;
+        push(BLOCK, frame.fn.body);
+        pushValue(null);
+    }
+
+    private void endCall(Frame frame) {
+        Map<String, Object> variables = context.getVariables();
+        variables.clear();
+        variables.putAll(frame.saved);
+        budget.exitCall();
+        interpreter.popCall();
+        interpreter.setCurrentFunction(frame.caller);
+        release(frame);
+    }
+
+    private void release(Frame frame) {
+        frame.saved.clear();
+        frame.name = null;
+        frame.fn = null;
+        frame.caller = null;
+        if (frames.size() < MAX_POOLED_FRAMES) frames.push(frame);
+    }
+
+    /**
+     * Mirrors {@link JPLContext#handleLet} and {@link JPLContext#handleConst}, one binding at a time.
+     */
+    private void assign(Task t) {
+        Map<String, Object> variables = context.getVariables();
+        if (t.aux == null) {
+            if (t.op == LET && t.node.isEmpty()) {
+                throw new JPLException("Empty 'let' operation");
+            }
+            t.aux = t.node.properties().iterator();
+        } else {
+            Object value = popValue();
+            if (t.op == LET) {
+                if (context.getConstants().contains(t.name)) {
+                    throw new JPLException("Cannot assign to constant variable: " + t.name);
+                }
+                variables.put(t.name, value);
+            } else {
+                variables.put(t.name, value);
+                context.getConstants().add(t.name);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        Iterator<Map.Entry<String, JsonNode>> bindings = (Iterator<Map.Entry<String, JsonNode>>) t.aux;
+        if (bindings.hasNext()) {
+            Map.Entry<String, JsonNode> binding = bindings.next();
+            t.name = binding.getKey();
+            if (t.op == CONST && variables.containsKey(t.name)) {
+                throw new JPLException("Variable already defined: " + t.name);
+            }
+            push(EXPR, binding.getValue());
+            return;
+        }
+        if (t.traced >= 0) interpreter.traceWrite(t.traced, t.node);
+        complete(null);
+    }
+
+    private static JsonNode condition(JsonNode node) {
+        JsonNode ifNode = node.get("if");
+        if (ifNode == null) throw new JPLException("Missing 'if' field in if statement");
+        JsonNode conditionNode = ifNode.has("cond") ? ifNode.get("cond") : null;
+        if (conditionNode == null) {
+            Iterator<String> fields = ifNode.fieldNames();
+            while (fields.hasNext()) {
+                String key = fields.next();
+                if (!key.equals("then") && !key.equals("else")) {
+                    conditionNode = ifNode.get(key);
+                    break;
+                }
+            }
+        }
+        if (conditionNode == null) throw new JPLException("Missing condition in if statement");
+        return conditionNode;
+    }
+
+    private void whileLoop(Task t) {
+        switch (t.state) {
+            case LOOP_START -> {
+                t.owner = interpreter.getCurrentFunction();
+                t.state = LOOP_CONDITION;
+                push(EXPR, t.node.get("while"));
+            }
+            case LOOP_CONDITION -> {
+                if ((Boolean) popValue()) {
+                    budget.tick();
+                    if (t.owner != null) t.owner.hotness++;
+                    t.state = LOOP_BODY;
+                    t.index = 0;
+                } else {
+                    complete(null);
+                }
+            }
+            case LOOP_BODY -> {
+                JsonNode body = t.node.get("do");
+                if (t.index > 0) popValue();
+                if (t.index < size(body)) {
+                    push(EVAL, child(body, t.index++));
+                } else {
+                    t.state = LOOP_CONDITION;
+                    push(EXPR, t.node.get("while"));
+                }
+            }
+            default -> complete(null);
+        }
+    }
+
+    /**
+     * Mirrors {@link JPLInterpreter#evalFor}: bounds first, then one pass over the body per iteration.
+     */
+    private void forLoop(Task t) {
+        JsonNode forNode = t.node;
+        if (t.state == LOOP_START) {
+            if (t.index == 0) t.name = forNode.get("var").asText();
+            // Bounds: from, to and optional step, evaluated in that order
+            String[] keys = {"from", "to", "step"};
+            if (t.index > 0) {
+                Object value = popValue();
+                String key = keys[t.index - 1];
+                if (!(value instanceof Number number)) {
+                    throw new JPLException("'for' " + key + " must be a number, got: " + value);
+                }
+                switch (key) {
+                    case "from" -> t.from = number.longValue();
+                    case "to" -> t.trips = number.longValue();
+                    default -> t.step = number.longValue();
+                }
+            }
+            if (t.index < 2 || (t.index == 2 && forNode.has("step"))) {
+                String key = keys[t.index++];
+                JsonNode boundNode = forNode.get(key);
+                if (boundNode == null) throw new JPLException("Missing '" + key + "' in for loop");
+                push(EXPR, boundNode);
+                return;
+            }
+            if (t.index == 2) t.step = 1;
+            t.trips = LoopBounds.tripCount(t.from, t.trips, t.step);
+            t.flag = context.hasDeferredCode() || JPLInterpreter.mayReadVariable(forNode.get("do"), t.name);
+            t.owner = interpreter.getCurrentFunction();
+            t.n = 0;
+            t.i = t.from;
+            t.state = LOOP_CONDITION;
+            return;
+        }
+        Map<String, Object> variables = context.getVariables();
+        switch (t.state) {
+            case LOOP_CONDITION -> {
+                if (Long.compareUnsigned(t.n, t.trips) >= 0) {
+                    t.state = LOOP_DONE;
+                    return;
+                }
+                budget.tick();
+                if (t.owner != null) t.owner.hotness++;
+                if (t.flag) variables.put(t.name, JPLInterpreter.boxCounter(t.i));
+                t.state = LOOP_BODY;
+                t.index = 0;
+            }
+            case LOOP_BODY -> {
+                JsonNode body = forNode.get("do");
+                if (t.index > 0) popValue();
+                if (t.index < size(body)) {
+                    push(EVAL, child(body, t.index++));
+                } else {
+                    nextIteration(t);
+                }
+            }
+            default -> {
+                if (!t.flag && t.trips != 0) {
+                    // Leave the variable holding its last value, as if it had been written every iteration
+                    variables.put(t.name, JPLInterpreter.boxCounter(t.from + (t.trips - 1) * t.step));
+                }
+                complete(null);
+            }
+        }
+    }
+
+    private static void nextIteration(Task t) {
+        if (t.op == FOR) {
+            t.n++;
+            t.i += t.step;
+        }
+        t.state = LOOP_CONDITION;
+    }
+
+    /**
+     * Pops tasks until one handles the signal: a call for return, a loop running its body for
+     * break and continue. Calls that are passed restore the caller's variables, as the interpreter's
+     * finally block does. If nothing in this run handles it, the signal is rethrown as an exception.
+     */
+    private void unwind(Signal signal, Object value, Throwable error) throws IOException {
+        while (top > base) {
+            Task t = tasks[top - 1];
+            switch (t.op) {
+                case CALL_END -> {
+                    if (signal == Signal.RETURN) {
+                        truncateValues(t.sp);
+                        endCall((Frame) t.aux);
+                        complete(value);
+                        return;
+                    }
+                    endCall((Frame) t.aux);
+                }
+                case CALL_ARGS -> release((Frame) t.aux);
+                case WHILE, FOR -> {
+                    if (t.state == LOOP_BODY && (signal == Signal.BREAK || signal == Signal.CONTINUE)) {
+                        truncateValues(t.sp);
+                        if (signal == Signal.CONTINUE) {
+                            nextIteration(t);
+                        } else {
+                            if (t.op == FOR) t.trips = t.n + 1;
+                            t.state = LOOP_DONE;
+                        }
+                        return;
+                    }
+                }
+                case EVAL_END -> {
+                    if (signal == Signal.ERROR && error instanceof RuntimeException e) {
+                        error = e instanceof JPLException jpl
+                                ? (jpl.hasLocation() ? jpl : jpl.withLocation(interpreter.locationOf(t.node)))
+                                : new JPLException(String.valueOf(e.getMessage())).withLocation(interpreter.locationOf(t.node));
+                    }
+                }
+                default -> {
+                }
+            }
+            pop();
+        }
+        truncateValues(valueBase);
+        switch (signal) {
+            case RETURN -> throw new ReturnException(value);
+            case BREAK -> throw new BreakException();
+            case CONTINUE -> throw new ContinueException();
+            default -> {
+                if (error instanceof IOException e) throw e;
+                if (error instanceof RuntimeException e) throw e;
+                throw (Error) error;
+            }
+        }
+    }
+
+    /**
+     * Whether evaluating the node can call a JPL function, i.e. whether it is worth taking apart.
+     */
+    private boolean needsStack(JsonNode node) {
+        if (node == null || !node.isContainerNode()) return false;
+        Boolean cached = hasCall.get(node);
+        if (cached != null) return cached;
+        boolean found = node.has("call");
+        if (!found) {
+            for (JsonNode child : node) {
+                if (needsStack(child)) {
+                    found = true;
+                    break;
+                }
+            }
+        }
+        hasCall.put(node, found);
+        return found;
+    }
+
+    private static int size(JsonNode block) {
+        return block == null ? 0 : block.size();
+    }
+
+    /** The i-th statement of a block, which the interpreter iterates with a for-each loop. */
+    private static JsonNode child(JsonNode block, int i) {
+        if (block.isArray()) return block.get(i);
+        Iterator<JsonNode> elements = block.elements();
+        for (int skip = 0; skip < i; skip++) elements.next();
+        return elements.next();
+    }
+
+    // ---- Stacks ----
+
+    private Task push(int op, JsonNode node) {
+        if (top == tasks.length) tasks = Arrays.copyOf(tasks, top * 2);
+        Task t = tasks[top];
+        if (t == null) {
+            t = new Task();
+            tasks[top] = t;
+        }
+        top++;
+        t.op = op;
+        t.node = node;
+        t.state = 0;
+        t.index = 0;
+        t.sp = sp;
+        t.traced = -1;
+        return t;
+    }
+
+    private void pop() {
+        Task t = tasks[--top];
+        t.node = null;
+        t.aux = null;
+        t.name = null;
+        t.operator = null;
+        t.owner = null;
+    }
+
+    private static void replace(Task t, int op, JsonNode node) {
+        t.op = op;
+        t.node = node;
+        t.state = 0;
+        t.index = 0;
+    }
+
+    /** Replaces a task with a block of statements, as {@link JPLInterpreter#evalBlock} runs it. */
+    private void block(Task t, JsonNode body) {
+        if (body != null && body.isArray()) {
+            replace(t, BLOCK, body);
+            pushValue(null);
+        } else {
+            replace(t, EVAL, body);
+        }
+    }
+
+    /** Finishes the top task with its value. */
+    private void complete(Object value) {
+        pop();
+        pushValue(value);
+    }
+
+    private void pushValue(Object value) {
+        if (sp == values.length) values = Arrays.copyOf(values, sp * 2);
+        values[sp++] = value;
+    }
+
+    private Object popValue() {
+        Object value = values[--sp];
+        values[sp] = null;
+        return value;
+    }
+
+    private void truncateValues(int height) {
+        while (sp > height) values[--sp] = null;
+    }
+}
@@ -1,7 +1,60 @@
 package com.kapil.jpl.exceptions;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.function.Supplier;
+
 public class JPLException extends RuntimeException {
+    private static final String PREFIX = "🛑 JPL Error: ";
+
+    /** Not serialized; the message is built before writing, so it keeps the location text. */
+    private transient Supplier<String> location;
+    private String locatedMessage;
+
     public JPLException(String message) {
-        super("🛑 JPL Error: " + message);
+        super(PREFIX + message);
+    }
+
+    /**
+     * Attaches where in the JPL program the error happened (source position and call stack).
+     * Only the first location attached is kept, so the innermost one wins. The description is
+     * only built when the message is read.
+     *
+     * @param location Builds the location lines appended to the message.
+     * @return this exception.
+     */
+    public JPLException withLocation(Supplier<String> location) {
+        if (this.location == null) {
+            this.location = location;
+        }
+        return this;
+    }
+
+    /**
+     * @return true if a location has been attached.
+     */
+    public boolean hasLocation() {
+        return location != null;
+    }
+
+    /**
+     * @return The message without the "JPL Error" prefix, with the location if one is attached,
+     * for wrapping in another error's message.
+     */
+    public String getReason() {
+        return getMessage().substring(PREFIX.length());
+    }
+
+    @Override
+    public String getMessage() {
+        if (locatedMessage == null && location != null) {
+            locatedMessage = super.getMessage() + location.get();
+        }
+        return locatedMessage != null ? locatedMessage : super.getMessage();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getMessage();
+        out.defaultWriteObject();
     }
 }
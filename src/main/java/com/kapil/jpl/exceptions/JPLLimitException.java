@@ -0,0 +1,26 @@
+package com.kapil.jpl.exceptions;
+
+/**
+ * Thrown when a run exceeds one of its execution limits.
+ * Only the run that hit the limit is aborted; the interpreter can be reused afterwards.
+ */
+public class JPLLimitException extends JPLException {
+
+    /**
+     * The kind of limit that was exceeded.
+     */
+    public enum Limit {
+        INSTRUCTIONS, TIME, CALL_DEPTH, MEMORY
+    }
+
+    private final Limit limit;
+
+    public JPLLimitException(Limit limit, String message) {
+        super(message);
+        this.limit = limit;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,17 @@
+package com.kapil.jpl.lib;
+
+/**
+ * Service provider interface for contributing native Java functions to JPL.
+ * <p>
+ * Implementations are discovered with {@link java.util.ServiceLoader}: list the implementing class in
+ * {@code META-INF/services/com.kapil.jpl.lib.JPLNativeProvider} and put the jar on the classpath.
+ */
+public interface JPLNativeProvider {
+
+    /**
+     * Registers this provider's natives.
+     *
+     * @param natives The registry to add natives to.
+     */
+    void registerNatives(JPLNatives natives);
+}
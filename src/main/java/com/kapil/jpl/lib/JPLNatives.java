@@ -0,0 +1,282 @@
+package com.kapil.jpl.lib;
+
+import com.kapil.jpl.core.JPLString;
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+/**
+ * JPLNatives is the registry of Java functions callable from JPL through
+ * {@code {"native": "name"}} or {@code {"native": {"name": [args...]}}}.
+ * <p>
+ * Every native is bound to a {@link MethodHandle} when it is registered. Arguments are converted
+ * to the handle's declared parameter types, and natives registered as constants (system properties,
+ * environment variables, ...) are evaluated once and cached.
+ */
+public class JPLNatives {
+    private static final Object UNSET = new Object();
+    private static final String ENV_PREFIX = "env.";
+
+    private final Map<String, NativeFunction> functions;
+
+    public JPLNatives() {
+        this.functions = new HashMap<>();
+    }
+
+    private JPLNatives(Map<String, NativeFunction> functions) {
+        this.functions = new HashMap<>(functions);
+    }
+
+    /**
+     * A native function bound to a method handle.
+     */
+    public static final class NativeFunction {
+        private final String name;
+        private final Class<?>[] parameterTypes;
+        private final MethodHandle invoker;
+        private final boolean constant;
+        private volatile Object cached = UNSET;
+
+        private NativeFunction(String name, MethodHandle handle, boolean constant) {
+            this.name = name;
+            this.parameterTypes = handle.type().parameterArray();
+            // (Object[]) -> Object, so every call is a single invokeExact
+            this.invoker = handle.asSpreader(Object[].class, parameterTypes.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+            this.constant = constant;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getArity() {
+            return parameterTypes.length;
+        }
+
+        /**
+         * Invokes the native with JPL values, converting them to the handle's parameter types.
+         *
+         * @param args The resolved JPL argument values.
+         * @return The native's result.
+         * @throws JPLException if the arguments do not match or the native fails.
+         */
+        public Object invoke(Object... args) {
+            if (args.length != parameterTypes.length) {
+                throw new JPLException("Native " + name + " expects " + parameterTypes.length +
+                        " arguments, got " + args.length);
+            }
+            if (constant) {
+                Object value = cached;
+                if (value != UNSET) return value;
+            }
+
+            Object[] converted = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                converted[i] = coerce(args[i], parameterTypes[i]);
+            }
+
+            Object result;
+            try {
+                result = (Object) invoker.invokeExact(converted);
+            } catch (JPLException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new JPLException("Native call failed: " + name + " → " + e);
+            }
+            if (constant) cached = result;
+            return result;
+        }
+
+        private Object coerce(Object value, Class<?> type) {
+            value = JPLString.flatten(value);
+            if (type == Object.class) return value;
+            if (type == String.class || type == CharSequence.class) return value == null ? null : String.valueOf(value);
+            if (type == boolean.class || type == Boolean.class) {
+                if (value instanceof Boolean) return value;
+            } else if (value instanceof Number n) {
+                if (type == int.class || type == Integer.class) return n.intValue();
+                if (type == long.class || type == Long.class) return n.longValue();
+                if (type == double.class || type == Double.class) return n.doubleValue();
+                if (type == float.class || type == Float.class) return n.floatValue();
+                if (type == short.class || type == Short.class) return n.shortValue();
+                if (type == byte.class || type == Byte.class) return n.byteValue();
+            }
+            if (type.isInstance(value)) return value;
+            throw new JPLException("Native " + name + " expects " + type.getSimpleName() + ", got: " + value);
+        }
+    }
+
+    /**
+     * Registers a native function, replacing any previous native with the same name.
+     *
+     * @param name   The name used from JPL.
+     * @param handle The method handle to invoke; its parameter types drive argument conversion.
+     * @return This registry, for chaining.
+     */
+    public JPLNatives register(String name, MethodHandle handle) {
+        functions.put(name, new NativeFunction(name, handle, false));
+        return this;
+    }
+
+    /**
+     * Registers a native whose result never changes during the life of the JVM.
+     * It is invoked at most once and its result is cached.
+     *
+     * @param name   The name used from JPL.
+     * @param handle The method handle to invoke.
+     * @return This registry, for chaining.
+     */
+    public JPLNatives registerConstant(String name, MethodHandle handle) {
+        functions.put(name, new NativeFunction(name, handle, true));
+        return this;
+    }
+
+    /**
+     * Registers a public static Java method as a native.
+     *
+     * @param name       The name used from JPL.
+     * @param owner      The class declaring the method.
+     * @param methodName The method name.
+     * @param type       The method type (return and parameter types).
+     * @return This registry, for chaining.
+     * @throws JPLException if the method cannot be found or accessed.
+     */
+    public JPLNatives register(String name, Class<?> owner, String methodName, MethodType type) {
+        try {
+            return register(name, MethodHandles.publicLookup().findStatic(owner, methodName, type));
+        } catch (ReflectiveOperationException e) {
+            throw new JPLException("Cannot bind native " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds a native by name. Names of the form {@code env.KEY} are bound on first use.
+     *
+     * @param name The native name.
+     * @return The native function.
+     * @throws JPLException if no native with that name exists.
+     */
+    public NativeFunction lookup(String name) {
+        NativeFunction fn = functions.get(name);
+        if (fn != null) return fn;
+
+        if (name.startsWith(ENV_PREFIX)) {
+            String key = name.substring(ENV_PREFIX.length());
+            registerConstant(name, MethodHandles.insertArguments(Builtins.GETENV, 0, key));
+            return functions.get(name);
+        }
+        throw new JPLException("Unsupported native expression: " + name);
+    }
+
+    /**
+     * Checks whether a native is registered under a name.
+     *
+     * @param name The native name.
+     * @return true if the native exists.
+     */
+    public boolean isRegistered(String name) {
+        return functions.containsKey(name);
+    }
+
+    /**
+     * Creates an independent copy of this registry.
+     *
+     * @return A new registry with the same natives.
+     */
+    public JPLNatives copy() {
+        return new JPLNatives(functions);
+    }
+
+    /**
+     * Registers the natives of every {@link JPLNativeProvider} visible to the class loader.
+     *
+     * @param loader The class loader to search for providers.
+     * @return This registry, for chaining.
+     */
+    public JPLNatives loadProviders(ClassLoader loader) {
+        for (JPLNativeProvider provider : ServiceLoader.load(JPLNativeProvider.class, loader)) {
+            provider.registerNatives(this);
+        }
+        return this;
+    }
+
+    /**
+     * Creates a registry with JPL's built-in natives (time, system info, runtime, environment,
+     * bulk numeric functions and {@code load} for JSON data files).
+     *
+     * @return A new registry.
+     */
+    public static JPLNatives builtins() {
+        JPLNatives n = new JPLNatives();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodType string = MethodType.methodType(String.class);
+
+            // 🕒 Time & Date
+            n.register("java.time.LocalDateTime.now()", lookup.findStatic(Builtins.class, "localDateTimeNow", string));
+            n.register("java.time.LocalDate.now()", lookup.findStatic(Builtins.class, "localDateNow", string));
+            n.register("java.time.Instant.now()", lookup.findStatic(Builtins.class, "instantNow", string));
+            n.register("System.currentTimeMillis()", lookup.findStatic(System.class, "currentTimeMillis", MethodType.methodType(long.class)));
+            n.register("System.nanoTime()", lookup.findStatic(System.class, "nanoTime", MethodType.methodType(long.class)));
+
+            // 🖥️ System Info
+            for (String key : List.of("os.name", "os.arch", "os.version", "java.version", "java.vendor",
+                    "user.name", "user.home", "user.dir")) {
+                n.registerConstant(key, MethodHandles.insertArguments(Builtins.GETPROPERTY, 0, key));
+            }
+
+            // 🧠 Runtime Info
+            Runtime runtime = Runtime.getRuntime();
+            n.register("Runtime.maxMemory", lookup.findVirtual(Runtime.class, "maxMemory", MethodType.methodType(long.class)).bindTo(runtime));
+            n.register("Runtime.totalMemory", lookup.findVirtual(Runtime.class, "totalMemory", MethodType.methodType(long.class)).bindTo(runtime));
+            n.register("Runtime.freeMemory", lookup.findVirtual(Runtime.class, "freeMemory", MethodType.methodType(long.class)).bindTo(runtime));
+            n.register("Runtime.availableProcessors", lookup.findVirtual(Runtime.class, "availableProcessors", MethodType.methodType(int.class)).bindTo(runtime));
+
+            // Names usable directly with "call"
+            n.register("java_time_now", lookup.findStatic(Builtins.class, "localDateTimeNow", string));
+            n.registerConstant("java_os_name", MethodHandles.insertArguments(Builtins.GETPROPERTY, 0, "os.name"));
+            n.registerConstant("java_user_name", MethodHandles.insertArguments(Builtins.GETPROPERTY, 0, "user.name"));
+            n.register("java_env", Builtins.GETENV);
+
+            // Bulk numeric functions, wrapped by lib/math.jpl
+            new NumericNatives().registerNatives(n);
+
+            // Memory-mapped JSON data files, read lazily
+            n.register("load", lookup.findStatic(JsonDocument.class, "load", MethodType.methodType(Object.class, Object.class)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        return n;
+    }
+
+    private static final class Builtins {
+        static final MethodHandle GETPROPERTY;
+        static final MethodHandle GETENV;
+
+        static {
+            try {
+                MethodType stringToString = MethodType.methodType(String.class, String.class);
+                GETPROPERTY = MethodHandles.lookup().findStatic(System.class, "getProperty", stringToString);
+                GETENV = MethodHandles.lookup().findStatic(System.class, "getenv", stringToString);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        static String localDateTimeNow() {
+            return java.time.LocalDateTime.now().toString();
+        }
+
+        static String localDateNow() {
+            return java.time.LocalDate.now().toString();
+        }
+
+        static String instantNow() {
+            return java.time.Instant.now().toString();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.kapil.jpl.lib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kapil.jpl.core.JPLContext;
+
+/**
+ * A JPL expression operator, e.g. the handler behind {@code {"add": [a, b]}}.
+ * Operators are registered in a {@link JPLResolver} under one or more keys.
+ */
+@FunctionalInterface
+public interface JPLOperator {
+
+    /**
+     * Evaluates the operator.
+     *
+     * @param context  The context the expression is resolved in; use it to resolve operands.
+     * @param operands The JSON node stored under the operator key (usually an array of operands).
+     * @return The value of the expression.
+     */
+    Object apply(JPLContext context, JsonNode operands);
+}
@@ -0,0 +1,17 @@
+package com.kapil.jpl.lib;
+
+/**
+ * Service provider interface for contributing operators to JPL from Java.
+ * <p>
+ * Implementations are discovered with {@link java.util.ServiceLoader}: list the implementing class in
+ * {@code META-INF/services/com.kapil.jpl.lib.JPLOperatorProvider} and put the jar on the classpath.
+ */
+public interface JPLOperatorProvider {
+
+    /**
+     * Registers this provider's operators.
+     *
+     * @param resolver The registry to add operators and aliases to.
+     */
+    void registerOperators(JPLResolver resolver);
+}
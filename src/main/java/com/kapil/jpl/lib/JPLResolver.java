@@ -1,5 +1,105 @@
 package com.kapil.jpl.lib;
 
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.util.*;
+
+/**
+ * JPLResolver is the operator registry used when resolving JPL expressions.
+ * It maps an operator key (e.g. "add", "eq", "==") to its {@link JPLOperator},
+ * so dispatching an expression costs a single hashed lookup regardless of how many operators exist.
+ */
 public class JPLResolver {
+    private final Map<String, JPLOperator> operators;
+
+    public JPLResolver() {
+        this.operators = new HashMap<>();
+    }
+
+    private JPLResolver(Map<String, JPLOperator> operators) {
+        this.operators = new HashMap<>(operators);
+    }
+
+    /**
+     * Registers an operator under the given key, replacing any previous operator with that key.
+     *
+     * @param key      The operator key as it appears in JPL source.
+     * @param operator The handler.
+     * @return This resolver, for chaining.
+     */
+    public JPLResolver register(String key, JPLOperator operator) {
+        if (key == null || key.isEmpty()) {
+            throw new JPLException("Operator key must not be empty");
+        }
+        operators.put(key, Objects.requireNonNull(operator, "operator"));
+        return this;
+    }
+
+    /**
+     * Registers an alias that shares the handler of an already registered operator.
+     *
+     * @param alias The alias key (e.g. "==").
+     * @param key   The existing operator key (e.g. "eq").
+     * @return This resolver, for chaining.
+     * @throws JPLException if no operator is registered under {@code key}.
+     */
+    public JPLResolver alias(String alias, String key) {
+        JPLOperator operator = operators.get(key);
+        if (operator == null) {
+            throw new JPLException("Cannot alias unknown operator: " + key);
+        }
+        return register(alias, operator);
+    }
+
+    /**
+     * Looks up the operator registered under a key.
+     *
+     * @param key The operator key.
+     * @return The operator, or null if none is registered.
+     */
+    public JPLOperator lookup(String key) {
+        return operators.get(key);
+    }
+
+    /**
+     * Checks whether an operator is registered under a key.
+     *
+     * @param key The operator key.
+     * @return true if the key is known.
+     */
+    public boolean isRegistered(String key) {
+        return operators.containsKey(key);
+    }
+
+    /**
+     * Returns all registered operator keys, including aliases.
+     *
+     * @return Unmodifiable view of the registered keys.
+     */
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(operators.keySet());
+    }
+
+    /**
+     * Creates an independent copy of this registry, so operators can be added per context
+     * without affecting other contexts.
+     *
+     * @return A new resolver with the same operators.
+     */
+    public JPLResolver copy() {
+        return new JPLResolver(operators);
+    }
 
+    /**
+     * Registers the operators of every {@link JPLOperatorProvider} visible to the class loader.
+     *
+     * @param loader The class loader to search for providers.
+     * @return This resolver, for chaining.
+     */
+    public JPLResolver loadProviders(ClassLoader loader) {
+        for (JPLOperatorProvider provider : ServiceLoader.load(JPLOperatorProvider.class, loader)) {
+            provider.registerOperators(this);
+        }
+        return this;
+    }
 }
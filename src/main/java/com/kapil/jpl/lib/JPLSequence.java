@@ -0,0 +1,343 @@
+package com.kapil.jpl.lib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kapil.jpl.core.JPLContext;
+import com.kapil.jpl.exceptions.JPLException;
+import com.kapil.jpl.utils.LoopBounds;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * JPLSequence is a lazy sequence value: a source (range, list, file lines) followed by
+ * map / filter / take stages.
+ * <p>
+ * Nothing is computed when a sequence is built. A terminal operation (reduce, sum, count, collect)
+ * pushes each source element through all stages in a single pass, so no intermediate
+ * collections are created. Numeric sources also support a primitive {@code double} path,
+ * used by numeric reductions to avoid boxing.
+ */
+public abstract class JPLSequence implements Iterable<Object> {
+
+    /**
+     * Receives the elements of a sequence.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        /**
+         * @param value The next element.
+         * @return false to stop the sequence early.
+         */
+        boolean accept(Object value);
+    }
+
+    /**
+     * Receives the elements of a numeric sequence without boxing.
+     */
+    @FunctionalInterface
+    public interface DoubleSink {
+        /**
+         * @param value The next element.
+         * @return false to stop the sequence early.
+         */
+        boolean accept(double value);
+    }
+
+    /**
+     * Pushes every element of this sequence into the sink, in order, until the sink returns false.
+     *
+     * @param sink The receiver.
+     * @return false if the sink stopped the sequence early.
+     */
+    public abstract boolean push(Sink sink);
+
+    /**
+     * Pushes every element as a double. Sources of primitive numbers override this to avoid boxing.
+     *
+     * @param sink The receiver.
+     * @return false if the sink stopped the sequence early.
+     */
+    public boolean pushDoubles(DoubleSink sink) {
+        return push(v -> sink.accept(asDouble(v)));
+    }
+
+    /**
+     * @return Whether every element is known to be a number, so {@link #pushDoubles} cannot fail
+     * on an element.
+     */
+    boolean isNumeric() {
+        return false;
+    }
+
+    /**
+     * Materializes the sequence into a list.
+     *
+     * @return A new list with every element of the sequence.
+     */
+    public List<Object> collect() {
+        List<Object> out = new ArrayList<>();
+        push(v -> {
+            out.add(v);
+            return true;
+        });
+        return out;
+    }
+
+    /**
+     * Counts the elements of the sequence.
+     *
+     * @return The number of elements.
+     */
+    public long count() {
+        long[] n = {0};
+        push(v -> {
+            n[0]++;
+            return true;
+        });
+        return n[0];
+    }
+
+    /**
+     * Sums the elements of the sequence on the primitive path.
+     *
+     * @return The sum as a double, matching JPL's 'add'.
+     */
+    public double sum() {
+        double[] acc = {0};
+        pushDoubles(v -> {
+            acc[0] += v;
+            return true;
+        });
+        return acc[0];
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return collect().iterator();
+    }
+
+    @Override
+    public String toString() {
+        return collect().toString();
+    }
+
+    /**
+     * Adapts a JPL value to a sequence: sequences are returned as-is, lists and other iterables are wrapped.
+     *
+     * @param value The value to adapt.
+     * @return The value as a sequence.
+     * @throws JPLException if the value cannot be iterated.
+     */
+    public static JPLSequence of(Object value) {
+        if (value instanceof JPLSequence seq) return seq;
+        if (value instanceof Iterable<?> items) return new IterableSequence(items);
+        throw new JPLException("Expected a sequence, got: " + value);
+    }
+
+    /**
+     * Creates an inclusive range, the same bounds a 'for' loop uses.
+     *
+     * @param from First element.
+     * @param to   Last element (inclusive).
+     * @param step Non-zero step; negative steps count down.
+     * @return The range.
+     */
+    public static JPLSequence range(long from, long to, long step) {
+        if (step == 0) throw new JPLException("Range step cannot be 0");
+        return new RangeSequence(from, to, step);
+    }
+
+    /**
+     * Creates a sequence over the lines of a text file, read lazily.
+     *
+     * @param path The file to read.
+     * @return The sequence of lines.
+     */
+    public static JPLSequence lines(Path path) {
+        return new LinesSequence(path);
+    }
+
+    public JPLSequence map(Lambda fn) {
+        JPLSequence upstream = this;
+        return new JPLSequence() {
+            @Override
+            public boolean push(Sink sink) {
+                return fn.bound(() -> upstream.push(v -> sink.accept(fn.apply(v))));
+            }
+        };
+    }
+
+    public JPLSequence filter(Lambda predicate) {
+        JPLSequence upstream = this;
+        return new JPLSequence() {
+            @Override
+            public boolean push(Sink sink) {
+                return predicate.bound(() -> upstream.push(v -> !Boolean.TRUE.equals(predicate.apply(v)) || sink.accept(v)));
+            }
+        };
+    }
+
+    public JPLSequence take(long limit) {
+        JPLSequence upstream = this;
+        return new JPLSequence() {
+            @Override
+            public boolean push(Sink sink) {
+                if (limit <= 0) return true;
+                long[] seen = {0};
+                upstream.push(v -> sink.accept(v) && ++seen[0] < limit);
+                return true;
+            }
+
+            @Override
+            boolean isNumeric() {
+                return upstream.isNumeric();
+            }
+
+            @Override
+            public boolean pushDoubles(DoubleSink sink) {
+                if (limit <= 0) return true;
+                long[] seen = {0};
+                upstream.pushDoubles(v -> sink.accept(v) && ++seen[0] < limit);
+                return true;
+            }
+        };
+    }
+
+    private static double asDouble(Object value) {
+        if (value instanceof Number n) return n.doubleValue();
+        throw new JPLException("Expected number, got: " + value);
+    }
+
+    /**
+     * A one-parameter JPL expression, e.g. the {@code "x", {"mul": ["x", 2]}} part of a map stage.
+     * The parameter is bound as a variable in the context while the sequence runs,
+     * and its previous value is restored afterwards.
+     */
+    public static final class Lambda {
+        private final JPLContext context;
+        private final String param;
+        private final JsonNode body;
+
+        public Lambda(JPLContext context, String param, JsonNode body) {
+            this.context = context;
+            this.param = param;
+            this.body = body;
+        }
+
+        Object apply(Object value) {
+            context.getBudget().tick();
+            context.getVariables().put(param, value);
+            return context.resolve(body);
+        }
+
+        boolean bound(java.util.function.BooleanSupplier run) {
+            Map<String, Object> vars = context.getVariables();
+            boolean had = vars.containsKey(param);
+            Object previous = vars.get(param);
+            try {
+                return run.getAsBoolean();
+            } finally {
+                if (had) vars.put(param, previous);
+                else vars.remove(param);
+            }
+        }
+    }
+
+    private static final class RangeSequence extends JPLSequence {
+        private final long from;
+        private final long step;
+        /** Unsigned, like a 'for' loop's, so bounds near the ends of the long range cannot overflow. */
+        private final long trips;
+        private final boolean fitsInt;
+
+        RangeSequence(long from, long to, long step) {
+            this.from = from;
+            this.step = step;
+            this.trips = LoopBounds.tripCount(from, to, step);
+            this.fitsInt = from == (int) from && to == (int) to;
+        }
+
+        @Override
+        public boolean push(Sink sink) {
+            long i = from;
+            for (long n = 0; Long.compareUnsigned(n, trips) < 0; n++, i += step) {
+                if (!sink.accept(fitsInt ? (Object) (int) i : (Object) i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean pushDoubles(DoubleSink sink) {
+            long i = from;
+            for (long n = 0; Long.compareUnsigned(n, trips) < 0; n++, i += step) {
+                if (!sink.accept(i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return true;
+        }
+
+        @Override
+        public long count() {
+            return trips;
+        }
+    }
+
+    private static final class IterableSequence extends JPLSequence {
+        private final Iterable<?> items;
+
+        IterableSequence(Iterable<?> items) {
+            this.items = items;
+        }
+
+        @Override
+        public boolean push(Sink sink) {
+            for (Object item : items) {
+                if (!sink.accept(item)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        boolean isNumeric() {
+            return items instanceof NumericArray;
+        }
+
+        @Override
+        public boolean pushDoubles(DoubleSink sink) {
+            if (!(items instanceof NumericArray array)) return super.pushDoubles(sink);
+            for (double v : array.values) {
+                if (!sink.accept(v)) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class LinesSequence extends JPLSequence {
+        private final Path path;
+
+        LinesSequence(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public boolean push(Sink sink) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!sink.accept(line)) return false;
+                }
+                return true;
+            } catch (IOException e) {
+                throw new JPLException("Failed to read lines: " + path + " → " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.kapil.jpl.lib;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.kapil.jpl.exceptions.JPLException;
+import com.kapil.jpl.utils.JsonUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A JSON data file read in place: the {@code load} native memory-maps the file and returns its root
+ * as a {@link Map} or {@link List} view, so {@code get} and the sequence operators work on it as on any
+ * other value, but only the values a script actually reads are parsed.
+ * <p>
+ * The first read builds a structural index in one streaming pass: for every object and array, where
+ * it starts and where its members' keys and values are. Values are parsed from their offsets when
+ * read, and an object's keys are decoded the first time one of them is looked up. The index is
+ * written next to the file as {@code <file>.jplidx} and memory-mapped by later runs, so reopening
+ * an unchanged file does no parsing at all. It is rebuilt when the file's length or modification
+ * time changes; if it cannot be written, it is only kept in memory.
+ * <p>
+ * Files of up to 2 GB are supported. Documents are cached per file for the life of the JVM and
+ * may be read from several threads.
+ */
+public final class JsonDocument {
+    static final String INDEX_SUFFIX = ".jplidx";
+    private static final int MAGIC = 0x4A504C58; // "JPLX"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    /** Marks objects in a container's size word. */
+    private static final int OBJECT = 0x80000000;
+    private static final Map<String, JsonDocument> CACHE = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final ByteBuffer source;
+    private final long modified;
+    private volatile Index index;
+    private final Map<Integer, Map<String, Integer>> keys = new ConcurrentHashMap<>();
+
+    /**
+     * The structural index. A value is referred to by its byte offset if it is a scalar, or by
+     * {@code ~id} if it is the container with that id.
+     *
+     * @param containers Two ints per container: its first entry in members or elements, and its size
+     *                   with {@link #OBJECT} set for objects.
+     * @param members    Two ints per object member, grouped by object: the key's offset and the value.
+     * @param elements   One int per array element, grouped by array: the value.
+     * @param root       The top-level value.
+     */
+    private record Index(IntBuffer containers, IntBuffer members, IntBuffer elements, int root) {
+    }
+
+    private JsonDocument(File file, ByteBuffer source, long modified) {
+        this.file = file;
+        this.source = source;
+        this.modified = modified;
+    }
+
+    /**
+     * The {@code load} native.
+     *
+     * @param path Path of a JSON file, relative to the working directory.
+     * @return The document's root: a Map or List view, or the value itself if the root is not a container.
+     * @throws JPLException If the file cannot be read or is not valid JSON.
+     */
+    static Object load(Object path) {
+        File file = new File(String.valueOf(path));
+        if (!file.isFile()) throw new JPLException("load: file not found → " + file.getAbsolutePath());
+        long length = file.length();
+        long modified = file.lastModified();
+        // One entry per file: an edited file replaces its old mapping instead of adding to it
+        JsonDocument document = CACHE.compute(file.getAbsolutePath(), (k, cached) ->
+                cached != null && cached.source.capacity() == length && cached.modified == modified ? cached : open(file));
+        return document.value(document.index().root);
+    }
+
+    private static JsonDocument open(File file) {
+        long modified = file.lastModified();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new JPLException("load: " + file + " is larger than 2 GB");
+            }
+            return new JsonDocument(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), modified);
+        } catch (IOException e) {
+            throw new JPLException("load: cannot read " + file + ": " + e.getMessage());
+        }
+    }
+
+    private Index index() {
+        Index built = index;
+        if (built == null) {
+            synchronized (this) {
+                built = index;
+                if (built == null) {
+                    built = readIndex();
+                    if (built == null) {
+                        built = scan();
+                        writeIndex(built);
+                    }
+                    index = built;
+                }
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Walks the file once with a streaming parser. A container's entries are collected until it
+     * closes and then appended as one block, so the entries of every container are contiguous.
+     */
+    private Index scan() {
+        IntList containers = new IntList();
+        IntList members = new IntList();
+        IntList elements = new IntList();
+        Deque<IntList> open = new ArrayDeque<>();
+        Deque<Integer> ids = new ArrayDeque<>();
+        int root = 0;
+        try (JsonParser parser = parserAt(0)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) throw new JPLException("load: " + file + " is empty");
+            for (; token != null; token = parser.nextToken()) {
+                int offset = (int) parser.currentTokenLocation().getByteOffset();
+                int value;
+                switch (token) {
+                    case FIELD_NAME -> {
+                        open.peek().add(offset);
+                        continue;
+                    }
+                    case START_OBJECT, START_ARRAY -> {
+                        int id = containers.size() / 2;
+                        containers.add(0);
+                        containers.add(token == JsonToken.START_OBJECT ? OBJECT : 0);
+                        if (!open.isEmpty()) open.peek().add(~id);
+                        open.push(new IntList());
+                        ids.push(id);
+                        continue;
+                    }
+                    case END_OBJECT, END_ARRAY -> {
+                        IntList entries = open.pop();
+                        int id = ids.pop();
+                        boolean object = token == JsonToken.END_OBJECT;
+                        IntList pool = object ? members : elements;
+                        containers.set(id * 2, object ? pool.size() / 2 : pool.size());
+                        containers.set(id * 2 + 1, (object ? OBJECT : 0) | (object ? entries.size() / 2 : entries.size()));
+                        pool.addAll(entries);
+                        value = ~id;
+                    }
+                    default -> {
+                        value = offset;
+                        if (!open.isEmpty()) open.peek().add(offset);
+                    }
+                }
+                if (open.isEmpty()) {
+                    root = value;
+                    break;
+                }
+            }
+            if (parser.nextToken() != null) {
+                throw new JPLException("load: " + file + " has more than one top-level value");
+            }
+        } catch (IOException e) {
+            throw new JPLException("load: " + file + " is not valid JSON: " + e.getMessage());
+        }
+        return new Index(IntBuffer.wrap(containers.toArray()), IntBuffer.wrap(members.toArray()),
+                IntBuffer.wrap(elements.toArray()), root);
+    }
+
+    private Path indexPath() {
+        return Path.of(file.getPath() + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return The index cached next to the file, mapped rather than read, or null if there is none
+     * for this version of the file.
+     */
+    private Index readIndex() {
+        Path path = indexPath();
+        if (!Files.isRegularFile(path)) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getLong(8) != source.capacity() || buffer.getLong(16) != modified) {
+                return null;
+            }
+            int containerInts = buffer.getInt(24);
+            int memberInts = buffer.getInt(28);
+            int elementInts = buffer.getInt(32);
+            if (channel.size() != HEADER_BYTES + 4L * ((long) containerInts + memberInts + elementInts)) return null;
+            IntBuffer ints = buffer.position(HEADER_BYTES).slice().asIntBuffer();
+            return new Index(ints.slice(0, containerInts), ints.slice(containerInts, memberInts),
+                    ints.slice(containerInts + memberInts, elementInts), buffer.getInt(36));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeIndex(Index index) {
+        Path path = indexPath();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            int containerInts = index.containers.capacity();
+            int memberInts = index.members.capacity();
+            int elementInts = index.elements.capacity();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4 * (containerInts + memberInts + elementInts));
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(source.capacity()).putLong(modified)
+                    .putInt(containerInts).putInt(memberInts).putInt(elementInts).putInt(index.root);
+            buffer.asIntBuffer().put(index.containers.duplicate().rewind())
+                    .put(index.members.duplicate().rewind())
+                    .put(index.elements.duplicate().rewind());
+            buffer.rewind();
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Not cached (e.g. a read-only directory); the next run scans again
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Materializes a value: a view for containers, otherwise the parsed scalar.
+     */
+    private Object value(int ref) {
+        if (ref < 0) {
+            int id = ~ref;
+            return (index().containers.get(id * 2 + 1) & OBJECT) != 0 ? new ObjectView(id) : new ArrayView(id);
+        }
+        try (JsonParser parser = scalarParser(ref)) {
+            JsonToken token = parser.nextToken();
+            return switch (token) {
+                case VALUE_STRING -> parser.getText();
+                case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getNumberValue();
+                case VALUE_TRUE -> Boolean.TRUE;
+                case VALUE_FALSE -> Boolean.FALSE;
+                default -> null;
+            };
+        } catch (IOException e) {
+            throw new JPLException("load: cannot read " + file + ": " + e.getMessage());
+        }
+    }
+
+    private String key(int offset) {
+        // Fast path: a key without escapes is the UTF-8 bytes between its quotes
+        for (int i = offset + 1; i < source.capacity(); i++) {
+            byte b = source.get(i);
+            if (b == '"') {
+                byte[] bytes = new byte[i - offset - 1];
+                source.get(offset + 1, bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            if (b == '\\') break;
+        }
+        try (JsonParser parser = parserAt(offset)) {
+            parser.nextToken();
+            return parser.getText();
+        } catch (IOException e) {
+            throw new JPLException("load: cannot read " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The keys of one object mapped to their values, decoded on first lookup. With duplicate keys
+     * the last one wins, as when parsing.
+     */
+    private Map<String, Integer> keys(int id) {
+        return keys.computeIfAbsent(id, k -> {
+            IntBuffer members = index().members;
+            int first = first(id);
+            int size = size(id);
+            Map<String, Integer> names = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+            for (int i = first; i < first + size; i++) {
+                names.put(key(members.get(2 * i)), members.get(2 * i + 1));
+            }
+            return names;
+        });
+    }
+
+    /**
+     * A parser for the scalar at an offset. Numbers and literals are cut out first, since a parser
+     * reading a bare number checks that nothing but whitespace follows it.
+     */
+    private JsonParser scalarParser(int offset) throws IOException {
+        if (source.get(offset) == '"') return parserAt(offset);
+        int end = offset;
+        while (end < source.capacity() && ",}]/ \t\r\n".indexOf(source.get(end)) < 0) end++;
+        byte[] bytes = new byte[end - offset];
+        source.get(offset, bytes);
+        return JsonUtils.FACTORY.createParser(bytes);
+    }
+
+    private JsonParser parserAt(int offset) throws IOException {
+        return JsonUtils.FACTORY.createParser(new ByteBufferBackedInputStream(source.duplicate().position(offset)));
+    }
+
+    private int first(int id) {
+        return index().containers.get(id * 2);
+    }
+
+    private int size(int id) {
+        return index().containers.get(id * 2 + 1) & ~OBJECT;
+    }
+
+    /**
+     * A JSON object in the file. Looking up a key decodes the object's keys once; values are parsed as they are read.
+     */
+    private final class ObjectView extends AbstractMap<String, Object> {
+        private final int id;
+
+        ObjectView(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Integer value = keys(id).get(key);
+            return value == null ? null : value(value);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return keys(id).containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return JsonDocument.this.size(id);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    IntBuffer members = index().members;
+                    int first = first(id);
+                    int end = first + size();
+                    return new Iterator<>() {
+                        private int next = first;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < end;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= end) throw new NoSuchElementException();
+                            int member = next++;
+                            return new SimpleImmutableEntry<>(key(members.get(2 * member)), value(members.get(2 * member + 1)));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ObjectView.this.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * A JSON array in the file; elements are parsed as they are read.
+     */
+    private final class ArrayView extends AbstractList<Object> implements RandomAccess {
+        private final int id;
+
+        ArrayView(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Object get(int index) {
+            Objects.checkIndex(index, size());
+            return value(index().elements.get(first(id) + index));
+        }
+
+        @Override
+        public int size() {
+            return JsonDocument.this.size(id);
+        }
+    }
+
+    /** A growable int array for building the index. */
+    private static final class IntList {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        void addAll(IntList other) {
+            if (size + other.size > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + other.size, values.length * 2));
+            }
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.kapil.jpl.lib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kapil.jpl.core.JPLContext;
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Math operators, evaluated directly like the arithmetic ones, without a JPL call:
+ * <ul>
+ *   <li>{@code {"sin": x}} and cos, tan, asin, acos, atan, sinh, cosh, tanh, exp, log, log10, cbrt – a double</li>
+ *   <li>{@code {"hypot": [x, y]}}, {@code {"atan2": [y, x]}} – a double</li>
+ *   <li>{@code {"floor": x}}, ceil, round – an integer (long); integer operands are returned unchanged</li>
+ *   <li>{@code {"min": [a, b, ...]}}, {@code {"max": [a, b, ...]}} – the smallest or largest operand, unchanged;
+ *       a single list operand compares its elements</li>
+ *   <li>{@code {"clamp": [x, lo, hi]}} – x limited to [lo, hi], unchanged if already inside</li>
+ *   <li>{@code {"gcd": [a, b]}}, {@code {"modpow": [base, exp, mod]}} – on integers, giving a long</li>
+ *   <li>{@code {"random": []}} – a double in [0, 1); {@code {"random": [n]}} – a long in [0, n);
+ *       {@code {"seed": n}} – seeds the context's generator so the numbers that follow repeat</li>
+ * </ul>
+ */
+public class MathOperators implements JPLOperatorProvider {
+    /** Above this modulus a product of two residues may overflow a long. */
+    private static final long MAX_LONG_MODULUS = 3037000499L;
+
+    @Override
+    public void registerOperators(JPLResolver r) {
+        unary(r, "sin", Math::sin);
+        unary(r, "cos", Math::cos);
+        unary(r, "tan", Math::tan);
+        unary(r, "asin", Math::asin);
+        unary(r, "acos", Math::acos);
+        unary(r, "atan", Math::atan);
+        unary(r, "sinh", Math::sinh);
+        unary(r, "cosh", Math::cosh);
+        unary(r, "tanh", Math::tanh);
+        unary(r, "exp", Math::exp);
+        unary(r, "log", Math::log);
+        unary(r, "log10", Math::log10);
+        unary(r, "cbrt", Math::cbrt);
+        r.register("hypot", (ctx, ops) -> Math.hypot(number(ctx, ops, 0, 2, "hypot"), number(ctx, ops, 1, 2, "hypot")));
+        r.register("atan2", (ctx, ops) -> Math.atan2(number(ctx, ops, 0, 2, "atan2"), number(ctx, ops, 1, 2, "atan2")));
+
+        r.register("floor", (ctx, op) -> integral(ctx.resolve(op), Math::floor, "floor"));
+        r.register("ceil", (ctx, op) -> integral(ctx.resolve(op), Math::ceil, "ceil"));
+        r.register("round", (ctx, op) -> integral(ctx.resolve(op), v -> Math.abs(v) < 0x1p52 ? Math.round(v) : v, "round"));
+
+        r.register("min", (ctx, ops) -> extreme(ctx, ops, "min", false));
+        r.register("max", (ctx, ops) -> extreme(ctx, ops, "max", true));
+        r.register("clamp", MathOperators::clamp);
+
+        r.register("gcd", (ctx, ops) -> gcd(integer(ctx, ops, 0, 2, "gcd"), integer(ctx, ops, 1, 2, "gcd")));
+        r.register("modpow", (ctx, ops) -> modpow(integer(ctx, ops, 0, 3, "modpow"),
+                integer(ctx, ops, 1, 3, "modpow"), integer(ctx, ops, 2, 3, "modpow")));
+
+        r.register("random", MathOperators::random);
+        r.register("seed", (ctx, op) -> {
+            ctx.seedRandom(asInteger(ctx.resolve(op), "seed"));
+            return null;
+        });
+    }
+
+    private static void unary(JPLResolver r, String name, DoubleUnaryOperator fn) {
+        r.register(name, (ctx, op) -> fn.applyAsDouble(asNumber(ctx.resolve(op), name).doubleValue()));
+    }
+
+    /**
+     * Rounds to a long, keeping integer operands and values a long cannot hold (NaN, infinities, huge) as they are.
+     */
+    private static Object integral(Object value, DoubleUnaryOperator rounding, String name) {
+        Number n = asNumber(value, name);
+        if (isInteger(n)) return n;
+        double rounded = rounding.applyAsDouble(n.doubleValue());
+        return Math.abs(rounded) < 0x1p63 ? (Object) (long) rounded : (Object) rounded;
+    }
+
+    private static Object extreme(JPLContext ctx, JsonNode ops, String name, boolean max) {
+        if (!ops.isArray() || ops.isEmpty())
+            throw new JPLException("Invalid operands for " + name);
+        List<Object> values = new ArrayList<>(ops.size());
+        for (JsonNode op : ops) values.add(ctx.resolve(op));
+        if (values.size() == 1 && values.get(0) instanceof Iterable<?> items) {
+            values = new ArrayList<>();
+            for (Object item : items) values.add(item);
+            if (values.isEmpty()) throw new JPLException(name + " of an empty list");
+        }
+        Number best = asNumber(values.get(0), name);
+        for (int i = 1; i < values.size(); i++) {
+            Number candidate = asNumber(values.get(i), name);
+            if (max ? less(best, candidate) : less(candidate, best)) best = candidate;
+        }
+        return best;
+    }
+
+    private static Object clamp(JPLContext ctx, JsonNode ops) {
+        if (!ops.isArray() || ops.size() != 3)
+            throw new JPLException("Invalid operands for clamp");
+        Number x = asNumber(ctx.resolve(ops.get(0)), "clamp");
+        Number lo = asNumber(ctx.resolve(ops.get(1)), "clamp");
+        Number hi = asNumber(ctx.resolve(ops.get(2)), "clamp");
+        if (less(hi, lo)) throw new JPLException("clamp bounds are reversed: " + lo + " > " + hi);
+        return less(x, lo) ? lo : less(hi, x) ? hi : x;
+    }
+
+    private static boolean less(Number a, Number b) {
+        if (isInteger(a) && isInteger(b)) return a.longValue() < b.longValue();
+        return a.doubleValue() < b.doubleValue();
+    }
+
+    static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return Math.abs(a);
+    }
+
+    static long modpow(long base, long exponent, long modulus) {
+        if (modulus <= 0) throw new JPLException("modpow modulus must be positive, got: " + modulus);
+        if (exponent < 0) throw new JPLException("modpow exponent must not be negative, got: " + exponent);
+        if (modulus > MAX_LONG_MODULUS) {
+            return BigInteger.valueOf(base).modPow(BigInteger.valueOf(exponent), BigInteger.valueOf(modulus)).longValue();
+        }
+        long result = 1 % modulus;
+        long b = Math.floorMod(base, modulus);
+        for (long e = exponent; e > 0; e >>= 1) {
+            if ((e & 1) != 0) result = result * b % modulus;
+            b = b * b % modulus;
+        }
+        return result;
+    }
+
+    private static Object random(JPLContext ctx, JsonNode ops) {
+        if (!ops.isArray() || ops.size() > 1)
+            throw new JPLException("Invalid operands for random");
+        if (ops.isEmpty()) return ctx.getRandom().nextDouble();
+        long bound = asInteger(ctx.resolve(ops.get(0)), "random");
+        if (bound <= 0) throw new JPLException("random bound must be positive, got: " + bound);
+        return ctx.getRandom().nextLong(bound);
+    }
+
+    private static double number(JPLContext ctx, JsonNode ops, int index, int arity, String name) {
+        if (!ops.isArray() || ops.size() != arity)
+            throw new JPLException("Invalid operands for " + name);
+        return asNumber(ctx.resolve(ops.get(index)), name).doubleValue();
+    }
+
+    private static long integer(JPLContext ctx, JsonNode ops, int index, int arity, String name) {
+        if (!ops.isArray() || ops.size() != arity)
+            throw new JPLException("Invalid operands for " + name);
+        return asInteger(ctx.resolve(ops.get(index)), name);
+    }
+
+    private static boolean isInteger(Number n) {
+        return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+    }
+
+    /** Accepts integer types and whole doubles, since JPL arithmetic produces doubles. */
+    private static long asInteger(Object value, String name) {
+        Number n = asNumber(value, name);
+        if (isInteger(n)) return n.longValue();
+        double d = n.doubleValue();
+        if (d == Math.rint(d) && Math.abs(d) < 0x1p63) return (long) d;
+        throw new JPLException(name + " expects integers, got: " + value);
+    }
+
+    private static Number asNumber(Object value, String name) {
+        if (value instanceof Number n) return n;
+        throw new JPLException(name + " expects a number, got: " + value);
+    }
+}
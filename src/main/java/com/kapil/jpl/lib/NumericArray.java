@@ -0,0 +1,55 @@
+package com.kapil.jpl.lib;
+
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A JPL list of numbers stored as primitive doubles, as produced by the bulk numeric natives.
+ * <p>
+ * It is an ordinary read-only list to the rest of JPL (elements read back as {@link Double}), while
+ * the natives work on the backing array directly instead of unboxing element by element.
+ */
+public final class NumericArray extends AbstractList<Object> implements RandomAccess {
+    final double[] values;
+
+    NumericArray(double[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Adapts a JPL value to a numeric array: numeric arrays are returned as-is, sequences
+     * (e.g. ranges) and lists are copied into a new one.
+     *
+     * @param value The value to adapt.
+     * @return The value as a numeric array.
+     * @throws JPLException if the value is not a sequence of numbers.
+     */
+    public static NumericArray of(Object value) {
+        if (value instanceof NumericArray array) return array;
+        if (!(value instanceof Iterable<?>)) {
+            throw new JPLException("Expected a numeric array, got: " + value);
+        }
+        double[][] buffer = {new double[value instanceof java.util.Collection<?> c ? c.size() : 16]};
+        int[] size = {0};
+        JPLSequence.of(value).pushDoubles(v -> {
+            if (size[0] == buffer[0].length) buffer[0] = Arrays.copyOf(buffer[0], Math.max(16, size[0] * 2));
+            buffer[0][size[0]++] = v;
+            return true;
+        });
+        double[] values = buffer[0];
+        return new NumericArray(size[0] == values.length ? values : Arrays.copyOf(values, size[0]));
+    }
+
+    @Override
+    public Object get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,77 @@
+package com.kapil.jpl.lib;
+
+/**
+ * The loops behind the bulk numeric natives, over primitive double arrays.
+ * <p>
+ * This class is the scalar implementation. When the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}, {@link #INSTANCE} is a {@link VectorKernels} instead,
+ * which uses SIMD instructions. Reductions there add lanes in a different order, so sums and dot
+ * products may differ from the scalar ones in the last bits.
+ */
+class NumericKernels {
+    static final NumericKernels INSTANCE = load();
+
+    private static NumericKernels load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() && !Boolean.getBoolean("jpl.scalar")) {
+            try {
+                // Loaded by name so this class never links against the incubator module
+                return (NumericKernels) Class.forName("com.kapil.jpl.lib.VectorKernels")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to the scalar loops
+            }
+        }
+        return new NumericKernels();
+    }
+
+    String name() {
+        return "scalar";
+    }
+
+    double sum(double[] a) {
+        double sum = 0;
+        for (double v : a) sum += v;
+        return sum;
+    }
+
+    /** Callers check that the array is not empty. */
+    double min(double[] a) {
+        double min = Double.POSITIVE_INFINITY;
+        for (double v : a) min = Math.min(min, v);
+        return min;
+    }
+
+    /** Callers check that the array is not empty. */
+    double max(double[] a) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double v : a) max = Math.max(max, v);
+        return max;
+    }
+
+    double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    void add(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < a.length; i++) out[i] = a[i] + b[i];
+    }
+
+    void mul(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < a.length; i++) out[i] = a[i] * b[i];
+    }
+
+    void scale(double[] a, double k, double[] out) {
+        for (int i = 0; i < a.length; i++) out[i] = a[i] * k;
+    }
+
+    /** Each element depends on the previous one, so this stays scalar in both implementations. */
+    void prefixSum(double[] a, double[] out) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i];
+            out[i] = sum;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.kapil.jpl.lib;
+
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Bulk numeric natives over arrays and ranges, wrapped by {@code lib/math.jpl}:
+ * <ul>
+ *   <li>{@code array_of(xs)} – copies a list or sequence of numbers into a numeric array</li>
+ *   <li>{@code array_sum}, {@code array_min}, {@code array_max} – reductions to a number</li>
+ *   <li>{@code array_dot(xs, ys)} – dot product of two arrays of the same length</li>
+ *   <li>{@code array_add(xs, ys)}, {@code array_mul(xs, ys)} – element-wise, giving a new array</li>
+ *   <li>{@code array_scale(xs, k)}, {@code array_prefix_sum(xs)} – giving a new array</li>
+ * </ul>
+ * Arguments may be any list or sequence of numbers; results are {@link NumericArray}s, which later
+ * calls read without converting. The loops are {@link NumericKernels}.
+ */
+public class NumericNatives implements JPLNativeProvider {
+    private static final NumericKernels KERNELS = NumericKernels.INSTANCE;
+
+    @Override
+    public void registerNatives(JPLNatives natives) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodType unary = MethodType.methodType(Object.class, Object.class);
+            MethodType binary = MethodType.methodType(Object.class, Object.class, Object.class);
+            natives.register("array_of", lookup.findStatic(NumericNatives.class, "of", unary));
+            natives.register("array_sum", lookup.findStatic(NumericNatives.class, "sum", unary));
+            natives.register("array_min", lookup.findStatic(NumericNatives.class, "min", unary));
+            natives.register("array_max", lookup.findStatic(NumericNatives.class, "max", unary));
+            natives.register("array_dot", lookup.findStatic(NumericNatives.class, "dot", binary));
+            natives.register("array_add", lookup.findStatic(NumericNatives.class, "add", binary));
+            natives.register("array_mul", lookup.findStatic(NumericNatives.class, "mul", binary));
+            natives.register("array_scale", lookup.findStatic(NumericNatives.class, "scale",
+                    MethodType.methodType(Object.class, Object.class, double.class)));
+            natives.register("array_prefix_sum", lookup.findStatic(NumericNatives.class, "prefixSum", unary));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    static Object of(Object xs) {
+        return NumericArray.of(xs);
+    }
+
+    static Object sum(Object xs) {
+        return KERNELS.sum(NumericArray.of(xs).values);
+    }
+
+    static Object min(Object xs) {
+        return KERNELS.min(nonEmpty(xs, "array_min"));
+    }
+
+    static Object max(Object xs) {
+        return KERNELS.max(nonEmpty(xs, "array_max"));
+    }
+
+    static Object dot(Object xs, Object ys) {
+        double[] a = NumericArray.of(xs).values;
+        return KERNELS.dot(a, sameLength(a, ys));
+    }
+
+    static Object add(Object xs, Object ys) {
+        double[] a = NumericArray.of(xs).values;
+        double[] out = new double[a.length];
+        KERNELS.add(a, sameLength(a, ys), out);
+        return new NumericArray(out);
+    }
+
+    static Object mul(Object xs, Object ys) {
+        double[] a = NumericArray.of(xs).values;
+        double[] out = new double[a.length];
+        KERNELS.mul(a, sameLength(a, ys), out);
+        return new NumericArray(out);
+    }
+
+    static Object scale(Object xs, double k) {
+        double[] a = NumericArray.of(xs).values;
+        double[] out = new double[a.length];
+        KERNELS.scale(a, k, out);
+        return new NumericArray(out);
+    }
+
+    static Object prefixSum(Object xs) {
+        double[] a = NumericArray.of(xs).values;
+        double[] out = new double[a.length];
+        KERNELS.prefixSum(a, out);
+        return new NumericArray(out);
+    }
+
+    private static double[] nonEmpty(Object xs, String name) {
+        double[] a = NumericArray.of(xs).values;
+        if (a.length == 0) throw new JPLException(name + " of an empty array");
+        return a;
+    }
+
+    private static double[] sameLength(double[] a, Object ys) {
+        double[] b = NumericArray.of(ys).values;
+        if (a.length != b.length) {
+            throw new JPLException("Arrays differ in length: " + a.length + " vs " + b.length);
+        }
+        return b;
+    }
+}
@@ -0,0 +1,49 @@
+package com.kapil.jpl.lib;
+
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled regular expressions keyed by their text, so a regex operator in a loop compiles its
+ * pattern once. Least recently used patterns are dropped once {@link #CAPACITY} are held.
+ * Shared by every context; access is synchronized.
+ */
+final class PatternCache {
+    static final int CAPACITY = 256;
+
+    private static final Map<String, Pattern> PATTERNS = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private PatternCache() {
+    }
+
+    /**
+     * @param regex A regular expression in {@link Pattern} syntax.
+     * @return The compiled pattern.
+     * @throws JPLException if the expression is invalid.
+     */
+    static Pattern get(String regex) {
+        synchronized (PATTERNS) {
+            Pattern pattern = PATTERNS.get(regex);
+            if (pattern != null) return pattern;
+        }
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new JPLException("Invalid regex " + regex + ": " + e.getDescription());
+        }
+        synchronized (PATTERNS) {
+            PATTERNS.put(regex, pattern);
+        }
+        return pattern;
+    }
+}
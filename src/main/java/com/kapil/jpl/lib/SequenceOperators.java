@@ -0,0 +1,143 @@
+package com.kapil.jpl.lib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kapil.jpl.core.ExecutionBudget;
+import com.kapil.jpl.core.JPLContext;
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Operators for lazy sequences:
+ * <ul>
+ *   <li>{@code {"range": [from, to, step?]}} – inclusive numeric range</li>
+ *   <li>{@code {"lines": "path"}} – lines of a text file</li>
+ *   <li>{@code {"map": [seq, "x", expr]}}, {@code {"filter": [seq, "x", cond]}}, {@code {"take": [seq, n]}}</li>
+ *   <li>{@code {"reduce": [seq, init, "acc", "x", expr]}}, {@code {"sum": seq}}, {@code {"count": seq}}, {@code {"collect": seq}}</li>
+ * </ul>
+ * Any list value (e.g. a JSON array literal) can be used where a sequence is expected.
+ */
+public class SequenceOperators implements JPLOperatorProvider {
+
+    @Override
+    public void registerOperators(JPLResolver r) {
+        r.register("range", SequenceOperators::range);
+        r.register("lines", (ctx, path) -> JPLSequence.lines(Path.of(String.valueOf(ctx.resolve(path)))));
+        r.register("map", (ctx, ops) -> source(ctx, ops, 3, "map").map(lambda(ctx, ops, 1, "map")));
+        r.register("filter", (ctx, ops) -> source(ctx, ops, 3, "filter").filter(lambda(ctx, ops, 1, "filter")));
+        r.register("take", (ctx, ops) -> source(ctx, ops, 2, "take").take(asNumber(ctx.resolve(ops.get(1))).longValue()));
+        r.register("reduce", SequenceOperators::reduce);
+        r.register("sum", SequenceOperators::sum);
+        r.register("count", (ctx, seq) -> JPLSequence.of(ctx.resolve(seq)).count());
+        r.register("collect", (ctx, seq) -> JPLSequence.of(ctx.resolve(seq)).collect());
+    }
+
+    private static Object range(JPLContext ctx, JsonNode ops) {
+        if (!ops.isArray() || ops.size() < 2 || ops.size() > 3)
+            throw new JPLException("Invalid operands for range");
+        long from = asNumber(ctx.resolve(ops.get(0))).longValue();
+        long to = asNumber(ctx.resolve(ops.get(1))).longValue();
+        long step = ops.size() == 3 ? asNumber(ctx.resolve(ops.get(2))).longValue() : 1;
+        return JPLSequence.range(from, to, step);
+    }
+
+    /**
+     * Folds a sequence: {@code {"reduce": [seq, init, "acc", "x", expr]}}.
+     * When the step is the built-in {@code add}/{@code mul} of the accumulator and the element,
+     * numbers are folded as primitive doubles without binding any variables: the whole sequence
+     * for numeric sources, otherwise up to the first element that is not a number, from which on
+     * the step is evaluated as written.
+     */
+    private static Object reduce(JPLContext ctx, JsonNode ops) {
+        JPLSequence seq = source(ctx, ops, 5, "reduce");
+        Object init = ctx.resolve(ops.get(1));
+        String acc = ops.get(2).asText();
+        String param = ops.get(3).asText();
+        JsonNode body = ops.get(4);
+
+        String numericOp = numericStep(body, acc, param);
+        boolean numeric = numericOp != null && init instanceof Number && ctx.isCoreOperator(numericOp);
+        boolean add = "add".equals(numericOp);
+        double[] sum = {numeric ? ((Number) init).doubleValue() : 0};
+        if (numeric && seq.isNumeric()) {
+            ExecutionBudget budget = ctx.getBudget();
+            if (add) seq.pushDoubles(v -> { budget.tick(); sum[0] += v; return true; });
+            else seq.pushDoubles(v -> { budget.tick(); sum[0] *= v; return true; });
+            return sum[0];
+        }
+
+        Map<String, Object> vars = ctx.getVariables();
+        boolean hadAcc = vars.containsKey(acc);
+        Object previousAcc = vars.get(acc);
+        ExecutionBudget budget = ctx.getBudget();
+        boolean[] folding = {numeric};
+        boolean[] folded = {false};
+        Object[] result = {init};
+        JPLSequence.Lambda step = new JPLSequence.Lambda(ctx, param, body);
+        try {
+            step.bound(() -> seq.push(v -> {
+                if (folding[0]) {
+                    if (v instanceof Number n) {
+                        budget.tick();
+                        sum[0] = add ? sum[0] + n.doubleValue() : sum[0] * n.doubleValue();
+                        folded[0] = true;
+                        return true;
+                    }
+                    folding[0] = false;
+                    if (folded[0]) result[0] = sum[0];
+                }
+                vars.put(acc, result[0]);
+                result[0] = step.apply(v);
+                return true;
+            }));
+        } finally {
+            if (hadAcc) vars.put(acc, previousAcc);
+            else vars.remove(acc);
+        }
+        return folding[0] ? sum[0] : result[0];
+    }
+
+    private static Object sum(JPLContext ctx, JsonNode seq) {
+        ExecutionBudget budget = ctx.getBudget();
+        double[] acc = {0};
+        JPLSequence.of(ctx.resolve(seq)).pushDoubles(v -> {
+            budget.tick();
+            acc[0] += v;
+            return true;
+        });
+        return acc[0];
+    }
+
+    private static String numericStep(JsonNode body, String acc, String param) {
+        if (!body.isObject() || body.size() != 1) return null;
+        String op = body.fieldNames().next();
+        if (!op.equals("add") && !op.equals("mul")) return null;
+        JsonNode operands = body.get(op);
+        if (!operands.isArray() || operands.size() != 2) return null;
+        String a = operands.get(0).isTextual() ? operands.get(0).asText() : null;
+        String b = operands.get(1).isTextual() ? operands.get(1).asText() : null;
+        boolean matches = (acc.equals(a) && param.equals(b)) || (acc.equals(b) && param.equals(a));
+        return matches ? op : null;
+    }
+
+    private static JPLSequence source(JPLContext ctx, JsonNode ops, int arity, String name) {
+        if (!ops.isArray() || ops.size() != arity)
+            throw new JPLException("Invalid operands for " + name);
+        return JPLSequence.of(ctx.resolve(ops.get(0)));
+    }
+
+    private static JPLSequence.Lambda lambda(JPLContext ctx, JsonNode ops, int index, String name) {
+        JsonNode param = ops.get(index);
+        if (!param.isTextual())
+            throw new JPLException("Expected a variable name in " + name + ", got: " + param);
+        // The stage runs whenever the sequence is consumed, possibly inside a loop
+        ctx.markDeferredCode();
+        return new JPLSequence.Lambda(ctx, param.asText(), ops.get(index + 1));
+    }
+
+    private static Number asNumber(Object value) {
+        if (value instanceof Number n) return n;
+        throw new JPLException("Expected number, got: " + value);
+    }
+}
@@ -0,0 +1,252 @@
+package com.kapil.jpl.lib;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kapil.jpl.core.JPLContext;
+import com.kapil.jpl.core.JPLString;
+import com.kapil.jpl.exceptions.JPLException;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * String operators:
+ * <ul>
+ *   <li>{@code {"length": s}} – characters in a string, or elements in a list or map</li>
+ *   <li>{@code {"substring": [s, start, end?]}}, {@code {"index_of": [s, text, from?]}} – -1 when absent</li>
+ *   <li>{@code {"upper": s}}, {@code {"lower": s}}, {@code {"trim": s}}</li>
+ *   <li>{@code {"starts_with": [s, prefix]}}, {@code {"ends_with": [s, suffix]}}, {@code {"contains": [s, text]}}</li>
+ *   <li>{@code {"replace": [s, text, replacement]}} – every occurrence, literally</li>
+ *   <li>{@code {"split": [s, separator]}} – on a literal separator; an empty one splits into characters</li>
+ *   <li>{@code {"format": [pattern, args...]}} – {@link String#format} in the root locale</li>
+ *   <li>{@code {"matches": [s, regex]}} – whether the regex matches anywhere in s</li>
+ *   <li>{@code {"match": [s, regex]}} – the first match and its groups as a list, or null</li>
+ *   <li>{@code {"regex_replace": [s, regex, replacement]}} – every match; {@code $1} refers to a group</li>
+ *   <li>{@code {"regex_split": [s, regex]}}</li>
+ * </ul>
+ * Joining is the existing {@code join} operator. Regexes are compiled once and kept in a
+ * {@link PatternCache}. Splits return a list that records where each piece starts and ends and
+ * copies a piece out of the string only when it is read.
+ */
+public class StringOperators implements JPLOperatorProvider {
+    /** A format specifier: %[index$][flags][width][.precision]conversion. */
+    private static final Pattern FORMAT_SPECIFIER =
+            Pattern.compile("%(\\d+\\$)?([-#+ 0,(<]*)?(\\d+)?(\\.\\d+)?([tT])?([a-zA-Z%])");
+
+    @Override
+    public void registerOperators(JPLResolver r) {
+        r.register("length", (ctx, op) -> {
+            Object value = ctx.resolve(op);
+            if (value instanceof Collection<?> items) return items.size();
+            if (value instanceof Map<?, ?> entries) return entries.size();
+            return text(value, "length").length();
+        });
+        r.register("substring", StringOperators::substring);
+        r.register("index_of", StringOperators::indexOf);
+        r.register("upper", (ctx, op) -> text(ctx.resolve(op), "upper").toUpperCase(Locale.ROOT));
+        r.register("lower", (ctx, op) -> text(ctx.resolve(op), "lower").toLowerCase(Locale.ROOT));
+        r.register("trim", (ctx, op) -> text(ctx.resolve(op), "trim").strip());
+        r.register("starts_with", (ctx, ops) -> {
+            String[] args = texts(ctx, ops, 2, "starts_with");
+            return args[0].startsWith(args[1]);
+        });
+        r.register("ends_with", (ctx, ops) -> {
+            String[] args = texts(ctx, ops, 2, "ends_with");
+            return args[0].endsWith(args[1]);
+        });
+        r.register("contains", (ctx, ops) -> {
+            String[] args = texts(ctx, ops, 2, "contains");
+            return args[0].contains(args[1]);
+        });
+        r.register("replace", (ctx, ops) -> {
+            String[] args = texts(ctx, ops, 3, "replace");
+            return args[0].replace(args[1], args[2]);
+        });
+        r.register("split", (ctx, ops) -> {
+            String[] args = texts(ctx, ops, 2, "split");
+            return splitLiteral(args[0], args[1]);
+        });
+        r.register("format", StringOperators::format);
+
+        r.register("matches", (ctx, ops) -> {
+            String[] args = texts(ctx, ops, 2, "matches");
+            return PatternCache.get(args[1]).matcher(args[0]).find();
+        });
+        r.register("match", (ctx, ops) -> {
+            String[] args = texts(ctx, ops, 2, "match");
+            Matcher matcher = PatternCache.get(args[1]).matcher(args[0]);
+            if (!matcher.find()) return null;
+            List<Object> groups = new ArrayList<>(matcher.groupCount() + 1);
+            for (int i = 0; i <= matcher.groupCount(); i++) groups.add(matcher.group(i));
+            return groups;
+        });
+        r.register("regex_replace", (ctx, ops) -> {
+            String[] args = texts(ctx, ops, 3, "regex_replace");
+            try {
+                return PatternCache.get(args[1]).matcher(args[0]).replaceAll(args[2]);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new JPLException("Invalid replacement " + args[2] + ": " + e.getMessage());
+            }
+        });
+        r.register("regex_split", (ctx, ops) -> {
+            String[] args = texts(ctx, ops, 2, "regex_split");
+            return splitRegex(args[0], PatternCache.get(args[1]));
+        });
+    }
+
+    private static Object substring(JPLContext ctx, JsonNode ops) {
+        if (!ops.isArray() || ops.size() < 2 || ops.size() > 3)
+            throw new JPLException("Invalid operands for substring");
+        String s = text(ctx.resolve(ops.get(0)), "substring");
+        int start = index(ctx.resolve(ops.get(1)), "substring");
+        int end = ops.size() == 3 ? index(ctx.resolve(ops.get(2)), "substring") : s.length();
+        if (start < 0 || end > s.length() || start > end) {
+            throw new JPLException("substring range " + start + ".." + end + " is outside a string of length " + s.length());
+        }
+        return s.substring(start, end);
+    }
+
+    private static Object indexOf(JPLContext ctx, JsonNode ops) {
+        if (!ops.isArray() || ops.size() < 2 || ops.size() > 3)
+            throw new JPLException("Invalid operands for index_of");
+        String s = text(ctx.resolve(ops.get(0)), "index_of");
+        String needle = text(ctx.resolve(ops.get(1)), "index_of");
+        int from = ops.size() == 3 ? index(ctx.resolve(ops.get(2)), "index_of") : 0;
+        return s.indexOf(needle, from);
+    }
+
+    /**
+     * Formats like {@link String#format}. JPL arithmetic gives doubles, so a whole double passed to an
+     * integer conversion such as {@code %d} is passed as a long, and an integer passed to a
+     * floating-point conversion as a double.
+     */
+    private static Object format(JPLContext ctx, JsonNode ops) {
+        if (!ops.isArray() || ops.isEmpty())
+            throw new JPLException("Invalid operands for format");
+        String pattern = text(ctx.resolve(ops.get(0)), "format");
+        Object[] args = new Object[ops.size() - 1];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = JPLString.flatten(ctx.resolve(ops.get(i + 1)));
+        }
+        Matcher specifiers = FORMAT_SPECIFIER.matcher(pattern);
+        int next = 0;
+        while (specifiers.find()) {
+            char conversion = specifiers.group(6).charAt(0);
+            if (conversion == '%' || conversion == 'n') continue;
+            int index = specifiers.group(1) != null
+                    ? Integer.parseInt(specifiers.group(1).substring(0, specifiers.group(1).length() - 1)) - 1
+                    : next++;
+            if (index < 0 || index >= args.length || specifiers.group(5) != null) continue;
+            if ("dxXo".indexOf(conversion) >= 0 && args[index] instanceof Double d
+                    && d == Math.rint(d) && Math.abs(d) < 0x1p63) {
+                args[index] = (long) (double) d;
+            } else if ("feEgGaA".indexOf(conversion) >= 0
+                    && (args[index] instanceof Integer || args[index] instanceof Long)) {
+                args[index] = ((Number) args[index]).doubleValue();
+            }
+        }
+        try {
+            return String.format(Locale.ROOT, pattern, args);
+        } catch (IllegalFormatException e) {
+            throw new JPLException("Invalid format " + pattern + ": " + e.getMessage());
+        }
+    }
+
+    private static List<Object> splitLiteral(String s, String separator) {
+        if (separator.isEmpty()) {
+            int[] bounds = new int[2 * s.length()];
+            for (int i = 0; i < s.length(); i++) {
+                bounds[2 * i] = i;
+                bounds[2 * i + 1] = i + 1;
+            }
+            return new Split(s, bounds, s.length());
+        }
+        Split.Builder pieces = new Split.Builder(s);
+        int at = 0;
+        for (int found; (found = s.indexOf(separator, at)) >= 0; at = found + separator.length()) {
+            pieces.add(at, found);
+        }
+        return pieces.add(at, s.length()).build();
+    }
+
+    private static List<Object> splitRegex(String s, Pattern pattern) {
+        Split.Builder pieces = new Split.Builder(s);
+        int at = 0;
+        Matcher matcher = pattern.matcher(s);
+        while (matcher.find()) {
+            // Like String.split, a zero-width match at the start does not make an empty first piece
+            if (matcher.end() == 0) continue;
+            pieces.add(at, matcher.start());
+            at = matcher.end();
+        }
+        return pieces.add(at, s.length()).build();
+    }
+
+    /**
+     * The pieces of a split string. Only where each piece starts and ends is stored; a piece is
+     * copied out of the string when it is read, so splitting a large text to read a few fields stays cheap.
+     */
+    private static final class Split extends AbstractList<Object> implements RandomAccess {
+        private final String source;
+        /** Start and end of piece i at 2i and 2i + 1. */
+        private final int[] bounds;
+        private final int size;
+
+        Split(String source, int[] bounds, int size) {
+            this.source = source;
+            this.bounds = bounds;
+            this.size = size;
+        }
+
+        @Override
+        public Object get(int index) {
+            Objects.checkIndex(index, size);
+            return source.substring(bounds[2 * index], bounds[2 * index + 1]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        static final class Builder {
+            private final String source;
+            private int[] bounds = new int[16];
+            private int count;
+
+            Builder(String source) {
+                this.source = source;
+            }
+
+            Builder add(int start, int end) {
+                if (count + 2 > bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                bounds[count++] = start;
+                bounds[count++] = end;
+                return this;
+            }
+
+            Split build() {
+                return new Split(source, bounds, count / 2);
+            }
+        }
+    }
+
+    private static String[] texts(JPLContext ctx, JsonNode ops, int arity, String name) {
+        if (!ops.isArray() || ops.size() != arity)
+            throw new JPLException("Invalid operands for " + name);
+        String[] texts = new String[arity];
+        for (int i = 0; i < arity; i++) texts[i] = text(ctx.resolve(ops.get(i)), name);
+        return texts;
+    }
+
+    private static String text(Object value, String name) {
+        value = JPLString.flatten(value);
+        if (value == null) throw new JPLException(name + " expects a string, got: null");
+        return value.toString();
+    }
+
+    private static int index(Object value, String name) {
+        if (value instanceof Number n && n.doubleValue() == Math.rint(n.doubleValue())) return n.intValue();
+        throw new JPLException(name + " expects an integer index, got: " + value);
+    }
+}
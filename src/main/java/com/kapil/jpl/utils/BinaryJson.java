@@ -0,0 +1,266 @@
+package com.kapil.jpl.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of JSON trees.
+ * <p>
+ * Field names and string values are interned: the first occurrence of a string is written inline
+ * and every later occurrence is written as a small integer id. Integers are written as zig-zag varints.
+ * A {@link Writer} and the matching {@link Reader} share the symbol table across all nodes written
+ * to the same stream, so repeated keys such as "print" or "let" cost a byte or two each.
+ */
+public final class BinaryJson {
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BIG_INTEGER = 5;
+    private static final byte BIG_DECIMAL = 6;
+    private static final byte STRING = 7;
+    private static final byte ARRAY = 8;
+    private static final byte OBJECT = 9;
+
+    private BinaryJson() {
+    }
+
+    /**
+     * Writes JSON trees and interned strings to a {@link DataOutput}.
+     */
+    public static final class Writer {
+        private final DataOutput out;
+        private final Map<String, Integer> symbols = new HashMap<>();
+
+        public Writer(DataOutput out) {
+            this.out = out;
+        }
+
+        public void writeNode(JsonNode node) throws IOException {
+            if (node == null || node.isNull() || node.isMissingNode()) {
+                out.writeByte(NULL);
+            } else if (node.isBoolean()) {
+                out.writeByte(node.booleanValue() ? TRUE : FALSE);
+            } else if (node.isInt() || node.isLong() || node.isShort()) {
+                out.writeByte(INT);
+                writeVarLong(node.longValue());
+            } else if (node.isBigInteger()) {
+                out.writeByte(BIG_INTEGER);
+                writeSymbol(node.bigIntegerValue().toString());
+            } else if (node.isBigDecimal()) {
+                out.writeByte(BIG_DECIMAL);
+                writeSymbol(node.decimalValue().toString());
+            } else if (node.isNumber()) {
+                out.writeByte(DOUBLE);
+                out.writeDouble(node.doubleValue());
+            } else if (node.isTextual()) {
+                out.writeByte(STRING);
+                writeSymbol(node.textValue());
+            } else if (node.isArray()) {
+                out.writeByte(ARRAY);
+                writeVarInt(node.size());
+                for (JsonNode element : node) {
+                    writeNode(element);
+                }
+            } else if (node.isObject()) {
+                out.writeByte(OBJECT);
+                writeVarInt(node.size());
+                for (Map.Entry<String, JsonNode> field : node.properties()) {
+                    writeSymbol(field.getKey());
+                    writeNode(field.getValue());
+                }
+            } else {
+                throw new IOException("Cannot encode JSON node: " + node.getNodeType());
+            }
+        }
+
+        /**
+         * Writes a string through the symbol table.
+         *
+         * @param symbol The string to write.
+         * @throws IOException If writing fails.
+         */
+        public void writeSymbol(String symbol) throws IOException {
+            Integer id = symbols.get(symbol);
+            if (id != null) {
+                writeVarInt(id + 1);
+            } else {
+                symbols.put(symbol, symbols.size());
+                byte[] utf8 = symbol.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(0);
+                writeVarInt(utf8.length);
+                out.write(utf8);
+            }
+        }
+
+        public void writeVarInt(int value) throws IOException {
+            writeVarLong(value);
+        }
+
+        public void writeVarLong(long value) throws IOException {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.writeByte((int) zigzag);
+        }
+    }
+
+    /**
+     * Reads JSON trees and interned strings written by a {@link Writer}.
+     * Decodes straight from a byte array, and sizes each object's field map exactly,
+     * so loading allocates little beyond the tree itself.
+     */
+    public static final class Reader {
+        private final byte[] data;
+        private int pos;
+        private final List<String> symbols = new ArrayList<>();
+        private final List<TextNode> texts = new ArrayList<>();
+        private final JsonNodeFactory nodes = JsonNodeFactory.instance;
+
+        /**
+         * @param data   The encoded bytes.
+         * @param offset Where to start reading.
+         */
+        public Reader(byte[] data, int offset) {
+            this.data = data;
+            this.pos = offset;
+        }
+
+        public JsonNode readNode() throws IOException {
+            byte tag = readByte();
+            switch (tag) {
+                case NULL:
+                    return nodes.nullNode();
+                case TRUE:
+                    return nodes.booleanNode(true);
+                case FALSE:
+                    return nodes.booleanNode(false);
+                case INT: {
+                    long value = readVarLong();
+                    return value == (int) value ? nodes.numberNode((int) value) : nodes.numberNode(value);
+                }
+                case DOUBLE:
+                    return nodes.numberNode(readDouble());
+                case BIG_INTEGER:
+                    return nodes.numberNode(new BigInteger(readSymbol()));
+                case BIG_DECIMAL:
+                    return nodes.numberNode(new BigDecimal(readSymbol()));
+                case STRING: {
+                    // Repeated strings share one immutable TextNode
+                    int index = readSymbolIndex();
+                    TextNode text = texts.get(index);
+                    if (text == null) {
+                        text = nodes.textNode(symbols.get(index));
+                        texts.set(index, text);
+                    }
+                    return text;
+                }
+                case ARRAY: {
+                    int size = readVarInt();
+                    ArrayNode array = nodes.arrayNode(size);
+                    for (int i = 0; i < size; i++) {
+                        array.add(readNode());
+                    }
+                    return array;
+                }
+                case OBJECT: {
+                    int size = readVarInt();
+                    Map<String, JsonNode> fields = new LinkedHashMap<>(size + (size + 2) / 3, 0.75f);
+                    for (int i = 0; i < size; i++) {
+                        String name = readSymbol();
+                        fields.put(name, readNode());
+                    }
+                    return new ObjectNode(nodes, fields);
+                }
+                default:
+                    throw new IOException("Corrupt binary JSON: unknown tag " + tag);
+            }
+        }
+
+        public String readSymbol() throws IOException {
+            return symbols.get(readSymbolIndex());
+        }
+
+        private int readSymbolIndex() throws IOException {
+            int id = readVarInt();
+            if (id == 0) {
+                int length = readVarInt();
+                require(length);
+                symbols.add(new String(data, pos, length, StandardCharsets.UTF_8));
+                pos += length;
+                texts.add(null);
+                return symbols.size() - 1;
+            }
+            if (id < 0 || id > symbols.size()) {
+                throw new IOException("Corrupt binary JSON: unknown symbol " + (id - 1));
+            }
+            return id - 1;
+        }
+
+        public byte readByte() throws IOException {
+            require(1);
+            return data[pos++];
+        }
+
+        public boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        public int readInt() throws IOException {
+            require(4);
+            int value = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16)
+                    | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+            pos += 4;
+            return value;
+        }
+
+        public long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        public double readDouble() throws IOException {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        public int readVarInt() throws IOException {
+            return (int) readVarLong();
+        }
+
+        public long readVarLong() throws IOException {
+            long zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift > 63) throw new IOException("Corrupt binary JSON: varint too long");
+                b = readByte();
+                zigzag |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private void require(int count) throws IOException {
+            if (count < 0 || pos + count > data.length) {
+                throw new EOFException("Corrupt binary JSON: unexpected end of data");
+            }
+        }
+    }
+}
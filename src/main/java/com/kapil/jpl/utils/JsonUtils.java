@@ -1,4 +1,65 @@
 package com.kapil.jpl.utils;
 
-public class JsonUtils {
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Shared Jackson configuration for reading JPL source, and streaming helpers for .jpl files.
+ */
+public final class JsonUtils {
+
+    /**
+     * Factory for JPL source: accepts {@code //} line and {@code /* *}{@code /} block comments,
+     * so comments are skipped by the tokenizer instead of being stripped beforehand.
+     */
+    public static final JsonFactory FACTORY = JsonFactory.builder()
+            .enable(JsonReadFeature.ALLOW_JAVA_COMMENTS)
+            .build();
+
+    /**
+     * Shared mapper built on {@link #FACTORY}. ObjectMapper is thread-safe once configured.
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper(FACTORY);
+
+    private JsonUtils() {
+    }
+
+    /**
+     * Pretty-prints a JSON file in place, token by token, so memory use does not grow with the file size.
+     * The result is written to a temporary file next to the original and then moved over it atomically,
+     * so the original is left untouched if formatting fails.
+     * <p>
+     * Comments are rejected rather than silently dropped, since the formatter cannot preserve them.
+     *
+     * @param file The file to format.
+     * @throws IOException If the file is not valid JSON or cannot be rewritten.
+     */
+    public static void format(Path file) throws IOException {
+        JsonFactory strict = new JsonFactory();
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (JsonParser parser = strict.createParser(file.toFile());
+                 JsonGenerator generator = strict.createGenerator(tmp.toFile(), JsonEncoding.UTF8)) {
+                generator.setPrettyPrinter(new DefaultPrettyPrinter());
+                while (parser.nextToken() != null) {
+                    // Exact copy keeps number literals as written (e.g. 1.50 stays 1.50)
+                    generator.copyCurrentEventExact(parser);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
 }
@@ -0,0 +1,31 @@
+package com.kapil.jpl.utils;
+
+import com.kapil.jpl.exceptions.JPLException;
+
+/**
+ * Arithmetic on counted loop bounds, shared by 'for' loops, compiled functions, parallel loops and ranges.
+ */
+public final class LoopBounds {
+
+    private LoopBounds() {
+    }
+
+    /**
+     * The number of iterations of a 'for' loop, as an unsigned count so the counter never overflows past 'to'.
+     *
+     * @param from The first value.
+     * @param to   The last value, inclusive.
+     * @param step The non-zero step; negative steps count down.
+     * @return The number of values, unsigned.
+     * @throws JPLException If the step is 0.
+     */
+    public static long tripCount(long from, long to, long step) {
+        if (step == 0) {
+            throw new JPLException("'for' step cannot be 0");
+        }
+        if (step > 0) {
+            return from > to ? 0 : Long.divideUnsigned(to - from, step) + 1;
+        }
+        return from < to ? 0 : Long.divideUnsigned(from - to, -step) + 1;
+    }
+}